@@ -0,0 +1,93 @@
+package com.marketplace.products.benchmarks;
+
+import com.marketplace.products.ProductsApplication;
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductBatchResult;
+import com.marketplace.products.service.ProductService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Boots the products application on its own in-memory H2, or the given database, and seeds it with a catalog.
+ */
+final class BenchmarkCatalog {
+
+    private static final int SEED_CHUNK_SIZE = 10_000;
+
+    private final ConfigurableApplicationContext context;
+    private final int firstId;
+    private final int lastId;
+
+    private BenchmarkCatalog(ConfigurableApplicationContext context, int firstId, int lastId) {
+        this.context = context;
+        this.firstId = firstId;
+        this.lastId = lastId;
+    }
+
+    static BenchmarkCatalog start(WebApplicationType webApplicationType, int catalogSize, String... properties) {
+        return start(webApplicationType, "jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                catalogSize, properties);
+    }
+
+    static BenchmarkCatalog start(WebApplicationType webApplicationType, String datasourceUrl, int catalogSize,
+                                  String... properties) {
+        // passed as command line arguments so they win over application.properties
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--spring.datasource.url=" + datasourceUrl,
+                "--server.port=0",
+                "--logging.level.root=WARN"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ProductsApplication.class)
+                .web(webApplicationType)
+                .run(args.toArray(new String[0]));
+
+        ProductService productService = context.getBean(ProductService.class);
+        int firstId = Integer.MAX_VALUE;
+        int lastId = Integer.MIN_VALUE;
+        for (int seeded = 0; seeded < catalogSize; seeded += SEED_CHUNK_SIZE) {
+            List<Product> chunk = products(Math.min(SEED_CHUNK_SIZE, catalogSize - seeded));
+            for (ProductBatchResult result : productService.saveAll(chunk)) {
+                firstId = Math.min(firstId, result.getId());
+                lastId = Math.max(lastId, result.getId());
+            }
+        }
+        return new BenchmarkCatalog(context, firstId, lastId);
+    }
+
+    static List<Product> products(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(new Product("Product " + i,
+                    "Description of product " + i + " with a few more words to make it realistic", i % 500));
+        }
+        return products;
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    ConfigurableApplicationContext getContext() {
+        return context;
+    }
+
+    /**
+     * A uniformly random id of the seeded catalog.
+     */
+    int randomId() {
+        return ThreadLocalRandom.current().nextInt(firstId, lastId + 1);
+    }
+
+    void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,77 @@
+package com.marketplace.products.benchmarks;
+
+import com.marketplace.products.model.StockLevel;
+import com.marketplace.products.model.StockReservation;
+import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.service.ProductService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stock reads and single-item reservations with the inventory store against the entity path,
+ * the product cache off so the latter goes to the database. Run with {@code -prof gc} to compare allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InventoryBenchmark {
+
+    private static final int CATALOG_SIZE = 10_000;
+
+    @Param({"true", "false"})
+    private boolean inventory;
+
+    private BenchmarkCatalog catalog;
+    private ProductService productService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = BenchmarkCatalog.start(WebApplicationType.NONE, CATALOG_SIZE,
+                "products.inventory.enabled=" + inventory,
+                "products.cache.max-size=0");
+        productService = catalog.getBean(ProductService.class);
+        restock();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        catalog.close();
+    }
+
+    /**
+     * Enough stock that reservations never run out during a trial.
+     */
+    private void restock() {
+        ProductRepository productRepository = catalog.getBean(ProductRepository.class);
+        productRepository.findAll().forEach(product ->
+                productService.adjustQuantity(product.getId(), 1_000_000_000, false));
+    }
+
+    @Benchmark
+    public StockLevel findStock() {
+        return productService.findStock(catalog.randomId());
+    }
+
+    @Benchmark
+    public void reserve() {
+        productService.reserve(Collections.singletonList(new StockReservation(catalog.randomId(), 1)));
+    }
+}
@@ -0,0 +1,179 @@
+package com.marketplace.products.benchmarks;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load test against the real Tomcat stack, to compare request execution modes.
+ * Boots the application with {@code products.execution.mode=<mode>}, then {@code concurrency}
+ * clients each send their next request as soon as the previous one completes, 90% single product
+ * reads and 10% pages of 100, for {@code warmupSeconds} and then {@code seconds} measured.
+ * Prints requests/sec and latency percentiles of the measured part.
+ * <p>
+ * Usage: {@code LoadTest <platform|virtual> [concurrency=400] [seconds=30] [warmupSeconds=10] [catalogSize=10000]}
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "platform";
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int warmupSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int catalogSize = args.length > 4 ? Integer.parseInt(args[4]) : 10_000;
+
+        // cache off and access log off so every request goes down to JDBC and nothing else dominates
+        BenchmarkCatalog catalog = BenchmarkCatalog.start(WebApplicationType.SERVLET, catalogSize,
+                "products.execution.mode=" + mode,
+                "products.cache.max-size=0",
+                "logging.level.access=OFF");
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        try {
+            int port = ((ServletWebServerApplicationContext) catalog.getContext()).getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(clientExecutor)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+            String baseUrl = "http://localhost:" + port + "/products";
+
+            run(client, baseUrl, catalog, concurrency, warmupSeconds);
+            Result result = run(client, baseUrl, catalog, concurrency, seconds);
+            System.out.printf("mode=%s java=%s concurrency=%d seconds=%d%n",
+                    mode, System.getProperty("java.version"), concurrency, seconds);
+            result.print(seconds);
+        } finally {
+            clientExecutor.shutdownNow();
+            catalog.close();
+        }
+    }
+
+    private static Result run(HttpClient client, String baseUrl, BenchmarkCatalog catalog,
+                              int concurrency, int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        AtomicLong errors = new AtomicLong();
+        List<Client> clients = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            Client c = new Client(client, baseUrl, catalog, deadline, done, errors);
+            clients.add(c);
+            c.next();
+        }
+        done.await();
+
+        int total = 0;
+        for (Client c : clients) {
+            total += c.count;
+        }
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (Client c : clients) {
+            System.arraycopy(c.latencies, 0, latencies, offset, c.count);
+            offset += c.count;
+        }
+        Arrays.sort(latencies);
+        return new Result(latencies, errors.get());
+    }
+
+    /**
+     * One simulated user: sends a request, records its latency and sends the next one from the callback.
+     * Callbacks of a client never overlap, so its latency buffer needs no synchronization.
+     */
+    private static final class Client {
+
+        private final HttpClient client;
+        private final String baseUrl;
+        private final BenchmarkCatalog catalog;
+        private final long deadline;
+        private final CountDownLatch done;
+        private final AtomicLong errors;
+
+        private long[] latencies = new long[1024];
+        private int count;
+
+        private Client(HttpClient client, String baseUrl, BenchmarkCatalog catalog, long deadline,
+                       CountDownLatch done, AtomicLong errors) {
+            this.client = client;
+            this.baseUrl = baseUrl;
+            this.catalog = catalog;
+            this.deadline = deadline;
+            this.done = done;
+            this.errors = errors;
+        }
+
+        private void next() {
+            long start = System.nanoTime();
+            if (start - deadline > 0) {
+                done.countDown();
+                return;
+            }
+            client.sendAsync(request(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        if (failure != null || response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                        } else {
+                            record(System.nanoTime() - start);
+                        }
+                        next();
+                    });
+        }
+
+        private HttpRequest request() {
+            String path = ThreadLocalRandom.current().nextInt(10) == 0
+                    ? "?after=" + (catalog.randomId() - 1) + "&limit=100"
+                    : "/" + catalog.randomId();
+            return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .header("Accept", "application/json")
+                    .timeout(Duration.ofSeconds(30))
+                    .build();
+        }
+
+        private void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    private static final class Result {
+
+        private final long[] latencies;
+        private final long errors;
+
+        private Result(long[] latencies, long errors) {
+            this.latencies = latencies;
+            this.errors = errors;
+        }
+
+        private void print(int seconds) {
+            System.out.printf("requests=%d errors=%d throughput=%.1f req/s%n",
+                    latencies.length, errors, latencies.length / (double) seconds);
+            System.out.printf("latency ms: p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+                    percentile(0.50), percentile(0.90), percentile(0.99), percentile(1.0));
+        }
+
+        private double percentile(double p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.marketplace.products.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.marketplace.products.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * (De)serialization of product lists in each wire format the controller negotiates, plain and gzipped.
+ * The encoded sizes are printed once per trial, next to the timings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductPayloadBenchmark {
+
+    private static final TypeReference<List<Product>> PRODUCT_LIST = new TypeReference<List<Product>>() {
+    };
+
+    @Param({"1", "100", "10000"})
+    private int listSize;
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    private ObjectMapper objectMapper;
+    private List<Product> products;
+    private byte[] encoded;
+    private byte[] gzipped;
+
+    @Setup
+    public void setUp() throws IOException {
+        switch (format) {
+            case "cbor":
+                objectMapper = new CBORMapper();
+                break;
+            case "smile":
+                objectMapper = new SmileMapper();
+                break;
+            default:
+                objectMapper = new ObjectMapper();
+        }
+        products = BenchmarkCatalog.products(listSize);
+        for (int i = 0; i < products.size(); i++) {
+            products.get(i).setId(i + 1);
+            products.get(i).setVersion(1);
+        }
+        encoded = objectMapper.writeValueAsBytes(products);
+        gzipped = serializeGzip();
+        System.out.printf("%n%s listSize=%d: %d bytes, %d bytes gzipped%n",
+                format, listSize, encoded.length, gzipped.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectMapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public List<Product> deserialize() throws IOException {
+        return objectMapper.readValue(encoded, PRODUCT_LIST);
+    }
+
+    @Benchmark
+    public byte[] serializeGzip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(out, products);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public List<Product> deserializeGzip() throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            return objectMapper.readValue(in, PRODUCT_LIST);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.marketplace.products.benchmarks;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductPage;
+import com.marketplace.products.service.ProductService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service layer against an in-memory H2 catalog, with and without the product cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    private int catalogSize;
+
+    @Param({"10000", "0"})
+    private int cacheSize;
+
+    private BenchmarkCatalog catalog;
+    private ProductService productService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = BenchmarkCatalog.start(WebApplicationType.NONE, catalogSize,
+                "products.cache.max-size=" + cacheSize);
+        productService = catalog.getBean(ProductService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        catalog.close();
+    }
+
+    /**
+     * One product per benchmark thread so updates never conflict.
+     */
+    @State(Scope.Thread)
+    public static class OwnProduct {
+
+        private Product product;
+
+        @Setup(Level.Trial)
+        public void setUp(ProductServiceBenchmark benchmark) {
+            product = benchmark.productService.save(new Product("Own product", "Description", 1));
+        }
+    }
+
+    @Benchmark
+    public Product findById() {
+        return productService.findById(catalog.randomId());
+    }
+
+    @Benchmark
+    public ProductPage findPage() {
+        return productService.findPage(catalog.randomId(), 100);
+    }
+
+    @Benchmark
+    public Product save() {
+        return productService.save(new Product("New product", "Description", 1));
+    }
+
+    @Benchmark
+    public Product update(OwnProduct own) {
+        own.product.setQuantity(own.product.getQuantity() + 1);
+        own.product = productService.update(own.product);
+        return own.product;
+    }
+}
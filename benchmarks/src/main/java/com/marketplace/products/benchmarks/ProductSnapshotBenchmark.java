@@ -0,0 +1,80 @@
+package com.marketplace.products.benchmarks;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.snapshot.ProductSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads from a memory-mapped catalog snapshot of {@code catalogSize} products: mapping the file,
+ * a lookup by id and a page of 100. Compare with {@code ProductServiceBenchmark} for the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductSnapshotBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int catalogSize;
+
+    private Path file;
+    private ProductSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void writeSnapshot() throws IOException {
+        file = Files.createTempFile("products", ".snapshot");
+        List<Product> products = BenchmarkCatalog.products(catalogSize);
+        try (ProductSnapshot.Writer writer = ProductSnapshot.writer(file, 0)) {
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.get(i);
+                product.setId(i + 1);
+                product.setVersion(1);
+                writer.add(product);
+            }
+            writer.commit();
+        }
+        snapshot = ProductSnapshot.open(file);
+        System.out.printf("%nsnapshot of %d products: %d bytes%n", catalogSize, Files.size(file));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSnapshot() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ProductSnapshot open() throws IOException {
+        return ProductSnapshot.open(file);
+    }
+
+    @Benchmark
+    public Product findById() {
+        return snapshot.find(ThreadLocalRandom.current().nextInt(1, catalogSize + 1));
+    }
+
+    @Benchmark
+    public List<Product> findPage() {
+        return snapshot.page(ThreadLocalRandom.current().nextInt(catalogSize - 100), 100);
+    }
+}
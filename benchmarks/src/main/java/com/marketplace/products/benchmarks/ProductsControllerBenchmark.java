@@ -0,0 +1,104 @@
+package com.marketplace.products.benchmarks;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.service.ProductService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+/**
+ * Full MVC path through the real filters, controller, service and H2, minus the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductsControllerBenchmark {
+
+    @Param({"10000"})
+    private int catalogSize;
+
+    /**
+     * Level of the application loggers, INFO shows what hot-path logging costs.
+     */
+    @Param({"INFO", "WARN"})
+    private String logLevel;
+
+    private BenchmarkCatalog catalog;
+    private MockMvc mockMvc;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = BenchmarkCatalog.start(WebApplicationType.SERVLET, catalogSize,
+                "logging.level.com.marketplace.products=" + logLevel);
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) catalog.getContext()).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        catalog.close();
+    }
+
+    /**
+     * One product per benchmark thread so updates never conflict.
+     */
+    @State(Scope.Thread)
+    public static class OwnProduct {
+
+        private int id;
+        private int version;
+
+        @Setup(Level.Trial)
+        public void setUp(ProductsControllerBenchmark benchmark) {
+            Product product = benchmark.catalog.getBean(ProductService.class)
+                    .save(new Product("Own product", "Description", 1));
+            id = product.getId();
+            version = product.getVersion();
+        }
+    }
+
+    @Benchmark
+    public MvcResult getProduct() throws Exception {
+        return mockMvc.perform(get("/products/{id}", catalog.randomId())).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getProductsPage() throws Exception {
+        return mockMvc.perform(get("/products").param("after", Integer.toString(catalog.randomId()))).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult updateProduct(OwnProduct own) throws Exception {
+        MvcResult result = mockMvc.perform(put("/products/{id}", own.id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, own.version)
+                .content("{\"name\":\"Own product\",\"description\":\"Description\",\"quantity\":" + own.version + "}"))
+                .andReturn();
+        own.version++;
+        return result;
+    }
+}
@@ -0,0 +1,78 @@
+package com.marketplace.products.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time until the service is up with {@code catalogSize} products: on an in-memory database the catalog
+ * is imported again on every start ({@code import}), on the file database of the {@code persistent}
+ * profile it was written once before the measurement ({@code persistent}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({"100000"})
+    private int catalogSize;
+
+    @Param({"import", "persistent"})
+    private String catalog;
+
+    private Path dataDir;
+    private BenchmarkCatalog started;
+
+    @Setup(Level.Trial)
+    public void populate() throws IOException {
+        if (catalog.equals("persistent")) {
+            dataDir = Files.createTempDirectory("products-startup");
+            BenchmarkCatalog.start(WebApplicationType.SERVLET, fileUrl(), catalogSize).close();
+        }
+    }
+
+    @Benchmark
+    public BenchmarkCatalog start() {
+        started = catalog.equals("persistent")
+                ? BenchmarkCatalog.start(WebApplicationType.SERVLET, fileUrl(), 0)
+                : BenchmarkCatalog.start(WebApplicationType.SERVLET, catalogSize);
+        return started;
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() {
+        started.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteData() throws IOException {
+        if (dataDir != null) {
+            FileSystemUtils.deleteRecursively(dataDir);
+        }
+    }
+
+    private String fileUrl() {
+        // the same database settings as application-persistent.properties
+        return "jdbc:h2:file:" + dataDir.resolve("products") + ";QUERY_CACHE_SIZE=64;DB_CLOSE_ON_EXIT=FALSE";
+    }
+}
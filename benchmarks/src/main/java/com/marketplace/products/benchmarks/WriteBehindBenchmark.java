@@ -0,0 +1,88 @@
+package com.marketplace.products.benchmarks;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductBatchResult;
+import com.marketplace.products.service.ProductService;
+import com.marketplace.products.writebehind.ProductWriteBehind;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repeated unconditional updates of a few hot products: each one written in its own transaction
+ * ({@code update}) against journaled and coalesced ({@code submit}), with and without fsync.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBehindBenchmark {
+
+    private static final int HOT_PRODUCTS = 10;
+
+    @Param({"true", "false"})
+    private boolean fsync;
+
+    private Path journalDir;
+    private BenchmarkCatalog catalog;
+    private ProductService productService;
+    private ProductWriteBehind productWriteBehind;
+    private int firstId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        journalDir = Files.createTempDirectory("journal");
+        catalog = BenchmarkCatalog.start(WebApplicationType.NONE, 0,
+                "products.write-behind.enabled=true",
+                "products.write-behind.journal-dir=" + journalDir,
+                "products.write-behind.fsync=" + fsync);
+        productService = catalog.getBean(ProductService.class);
+        productWriteBehind = catalog.getBean(ProductWriteBehind.class);
+        firstId = productService.save(new Product("Hot product", "Description", 0)).getId();
+        for (int i = 1; i < HOT_PRODUCTS; i++) {
+            productService.save(new Product("Hot product", "Description", 0));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        catalog.close();
+    }
+
+    @Benchmark
+    public List<ProductBatchResult> update() {
+        return productService.updateAll(Collections.singletonList(hotUpdate()));
+    }
+
+    @Benchmark
+    public boolean submit() {
+        return productWriteBehind.submit(hotUpdate());
+    }
+
+    private Product hotUpdate() {
+        int quantity = ThreadLocalRandom.current().nextInt(1000);
+        return new Product(firstId + ThreadLocalRandom.current().nextInt(HOT_PRODUCTS),
+                "Hot product", "Description", quantity, null);
+    }
+}
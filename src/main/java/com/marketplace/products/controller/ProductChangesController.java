@@ -0,0 +1,118 @@
+package com.marketplace.products.controller;
+
+import com.marketplace.products.model.ProductChange;
+import com.marketplace.products.model.ProductChangePage;
+import com.marketplace.products.service.ProductChangeFeed;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Incremental sync of the catalog from the product change log, by long polling or as Server-Sent Events.
+ * Neither holds a request thread while waiting, they are woken up by the change feed.
+ */
+@RestController
+public class ProductChangesController {
+
+    private static final Logger LOGGER = LogManager.getLogger(ProductChangesController.class);
+
+    static final int DEFAULT_CHANGES = 100;
+    static final int MAX_CHANGES = 1000;
+    static final int MAX_WAIT_SECONDS = 60;
+    static final long EVENT_STREAM_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+
+    private final ProductChangeFeed productChangeFeed;
+
+    public ProductChangesController(ProductChangeFeed productChangeFeed) {
+        this.productChangeFeed = productChangeFeed;
+    }
+
+    /**
+     * Get the changes after a position in the change log, waiting for one if there is none yet
+     * @param   after {@code next} of the previous response, 0 to read the log from the start
+     * @param   limit maximum number of changes, capped at {@value #MAX_CHANGES}
+     * @param   wait seconds to wait for a change if there is none, capped at {@value #MAX_WAIT_SECONDS}
+     * @return  the changes in log order with the cursor to continue from,
+     *          no changes and the same cursor if none came in while waiting
+     */
+    @GetMapping(value = "/products/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ProductChangePage> getChanges(@RequestParam(defaultValue = "0") long after,
+                                                        @RequestParam(defaultValue = "" + DEFAULT_CHANGES) int limit,
+                                                        @RequestParam(defaultValue = "0") int wait) {
+        int maxChanges = Math.max(1, Math.min(limit, MAX_CHANGES));
+        long timeoutMillis = Math.max(0, Math.min(wait, MAX_WAIT_SECONDS)) * 1000L;
+        DeferredResult<ProductChangePage> result = new DeferredResult<>(timeoutMillis,
+                () -> new ProductChangePage(Collections.emptyList(), after));
+
+        Runnable poll = () -> {
+            if (!result.isSetOrExpired()) {
+                ProductChangePage page = productChangeFeed.changesAfter(after, maxChanges);
+                if (!page.getChanges().isEmpty() || timeoutMillis == 0) {
+                    result.setResult(page);
+                }
+            }
+        };
+        // subscribed before the first read so a change committed in between is not missed
+        Runnable unsubscribe = productChangeFeed.subscribe(poll);
+        result.onCompletion(unsubscribe);
+        poll.run();
+        return result;
+    }
+
+    /**
+     * Stream the changes after a position in the change log as Server-Sent Events, one {@code change}
+     * event per change with the change id as event id. A reconnecting client resumes from Last-Event-ID.
+     * @param   after position to start from, 0 for the start of the log
+     */
+    @GetMapping(value = "/products/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestParam(defaultValue = "0") long after,
+                                    @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(EVENT_STREAM_TIMEOUT_MILLIS);
+        AtomicLong cursor = new AtomicLong(lastEventId != null ? lastEventId : after);
+
+        // the first push runs on this thread, the following ones on the feed thread: one at a time
+        Runnable push = () -> {
+            synchronized (cursor) {
+                pushChanges(emitter, cursor);
+            }
+        };
+        Runnable unsubscribe = productChangeFeed.subscribe(push);
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        push.run();
+        return emitter;
+    }
+
+    /**
+     * Sends everything after the cursor, moving it along.
+     */
+    private void pushChanges(SseEmitter emitter, AtomicLong cursor) {
+        try {
+            ProductChangePage page;
+            do {
+                page = productChangeFeed.changesAfter(cursor.get(), MAX_CHANGES);
+                for (ProductChange change : page.getChanges()) {
+                    emitter.send(SseEmitter.event()
+                            .id(Long.toString(change.getId()))
+                            .name("change")
+                            .data(change, MediaType.APPLICATION_JSON));
+                    cursor.set(change.getId());
+                }
+            } while (page.getChanges().size() == MAX_CHANGES);
+        } catch (IOException | IllegalStateException e) {
+            LOGGER.debug("Product change stream closed: {}", e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -1,48 +1,246 @@
 package com.marketplace.products.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.marketplace.products.model.InventoryStats;
 import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductBatchRequest;
+import com.marketplace.products.model.ProductBatchResult;
+import com.marketplace.products.model.ProductField;
+import com.marketplace.products.model.ProductLookupResult;
+import com.marketplace.products.model.ProductPage;
+import com.marketplace.products.model.QuantityAdjustment;
+import com.marketplace.products.model.StockLevel;
+import com.marketplace.products.model.StockReservation;
+import com.marketplace.products.service.InsufficientStockException;
 import com.marketplace.products.service.ProductService;
+import com.marketplace.products.writebehind.ProductWriteBehind;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 public class ProductsController {
 
     private static final Logger LOGGER = LogManager.getLogger(ProductsController.class);
 
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int DEFAULT_SEARCH_RESULTS = 20;
+    static final int MAX_SEARCH_RESULTS = 100;
+    static final int DEFAULT_LOW_STOCK_RESULTS = 20;
+    static final int MAX_LOW_STOCK_RESULTS = 1000;
+    static final int MAX_LOOKUP_IDS_IN_QUERY = 1000;
+    static final int MAX_LOOKUP_IDS = 10_000;
+
+    /**
+     * Media type of Jackson's binary JSON, as registered by Spring's Smile converter.
+     */
+    static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+
+    /**
+     * Formats Products are written in, in the order Spring prefers them.
+     */
+    private static final List<MediaType> PRODUCT_FORMATS = Arrays.asList(MediaType.APPLICATION_JSON,
+            MediaType.APPLICATION_CBOR, APPLICATION_SMILE);
+
     private final ProductService productService;
 
-    public ProductsController(ProductService productService) {
+    private final ObjectMapper objectMapper;
+
+    private final ProductWriteBehind productWriteBehind;
+
+    public ProductsController(ProductService productService, ObjectMapper objectMapper,
+                              ProductWriteBehind productWriteBehind) {
         this.productService = productService;
+        this.objectMapper = objectMapper;
+        this.productWriteBehind = productWriteBehind;
+    }
+
+    /**
+     * Get one page of products ordered by id, or only those modified since a point in time
+     * ordered by modification time
+     * @param   after cursor returned as {@code next} by the previous page, omit for the first page
+     * @param   limit page size, capped at {@value #MAX_PAGE_SIZE}
+     * @param   fields comma separated fields to return, e.g. {@code id,name,quantity}; only these are queried
+     *          (all of them for a {@code modifiedSince} page)
+     * @param   modifiedSince ISO-8601 instant; then pass back {@code nextModifiedSince} with {@code next}
+     *          to get the following page; after a page shorter than {@code limit}, pass them back later to get
+     *          what changed since. Deletes do not show up here, see {@code /products/changes}
+     * @return  the page with the cursor of the following one and an ETag derived from the
+     *          ids and versions on it, NOT_MODIFIED if it matches If-None-Match,
+     *          BAD_REQUEST for an unknown field
+     */
+    @GetMapping(value = "/products", produces = {MediaType.APPLICATION_JSON_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    public ResponseEntity<?> getAllProducts(@RequestParam(required = false) Integer after,
+                                            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+                                            @RequestParam(required = false) String fields,
+                                            @RequestParam(required = false)
+                                            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant modifiedSince) {
+        Set<ProductField> selectedFields = fields == null ? null : ProductField.parse(fields);
+        if (fields != null && selectedFields == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        ProductPage page;
+        if (modifiedSince != null) {
+            page = productService.findModifiedSince(modifiedSince, after, pageSize);
+        } else if (selectedFields != null) {
+            page = productService.findPage(after, pageSize, selectedFields);
+        } else {
+            page = productService.findPage(after, pageSize);
+        }
+        return ResponseEntity.ok()
+                .eTag(pageETag(page, selectedFields))
+                .body(withFields(page, selectedFields));
+    }
+
+    /**
+     * Get many Products by ID at once, e.g. {@code /products?ids=1,2,3}
+     * @param   ids IDs of the Products to get, at most {@value #MAX_LOOKUP_IDS_IN_QUERY}
+     * @param   fields comma separated fields to return
+     * @return  one result per ID in request order, found or not,
+     *          BAD_REQUEST if there are too many IDs or an unknown field
+     */
+    @GetMapping(value = "/products", params = "ids", produces = {MediaType.APPLICATION_JSON_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    public ResponseEntity<?> getProductsById(@RequestParam List<Integer> ids,
+                                             @RequestParam(required = false) String fields) {
+        Set<ProductField> selectedFields = fields == null ? null : ProductField.parse(fields);
+        if (fields != null && selectedFields == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return lookupProducts(ids, MAX_LOOKUP_IDS_IN_QUERY, selectedFields);
+    }
+
+    /**
+     * Get many Products by ID at once, for sets too large for a query string
+     * @param   ids IDs of the Products to get, at most {@value #MAX_LOOKUP_IDS}
+     * @return  one result per ID in request order, found or not,
+     *          BAD_REQUEST if there are too many IDs
+     */
+    @PostMapping("/products:lookup")
+    public ResponseEntity<?> lookupProducts(@RequestBody List<Integer> ids) {
+        return lookupProducts(ids, MAX_LOOKUP_IDS, null);
+    }
+
+    /**
+     * Stream the whole catalog as newline delimited JSON, one product per line,
+     * written while rows are read from the database.
+     * @param   fields comma separated fields to write, BAD_REQUEST for an unknown field
+     */
+    @GetMapping(value = "/products", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllProducts(@RequestParam(required = false) String fields) {
+        Set<ProductField> selectedFields = fields == null ? null : ProductField.parse(fields);
+        if (fields != null && selectedFields == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        ObjectWriter writer = selectedFields == null
+                ? objectMapper.writer()
+                : objectMapper.writer(fieldsFilter(selectedFields));
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                productService.streamAll(product -> {
+                    try {
+                        writer.writeValue(generator, product);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
-    @GetMapping("/products")
-    public Iterable<Product> getAllProducts() {
-        return productService.findAll();
+    /**
+     * Search Products by name and description, the last word of the query matches as a prefix
+     * @param   q words to look for, all of them have to match
+     * @param   limit maximum number of results, capped at {@value #MAX_SEARCH_RESULTS}
+     * @param   fields comma separated fields to return
+     * @return  matching Products, best first, BAD_REQUEST for an unknown field
+     */
+    @GetMapping("/products/search")
+    public ResponseEntity<?> searchProducts(@RequestParam String q,
+                                            @RequestParam(defaultValue = "" + DEFAULT_SEARCH_RESULTS) int limit,
+                                            @RequestParam(required = false) String fields) {
+        Set<ProductField> selectedFields = fields == null ? null : ProductField.parse(fields);
+        if (fields != null && selectedFields == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<Product> products = productService.search(q, Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS)));
+        return ResponseEntity.ok(withFields(products, selectedFields));
+    }
+
+    /**
+     * Stock figures of the whole catalog, kept up to date with every write instead of summed on request
+     * @param   limit maximum number of low-stock Products to list, capped at {@value #MAX_LOW_STOCK_RESULTS}
+     * @return  product count, total quantity, out-of-stock count and the Products in stock with the lowest
+     *          quantities, NOT_FOUND if the statistics are disabled
+     */
+    @GetMapping("/products/stats")
+    public ResponseEntity<?> getStats(@RequestParam(defaultValue = "" + DEFAULT_LOW_STOCK_RESULTS) int limit) {
+        InventoryStats stats = productService.inventoryStats(Math.max(0, Math.min(limit, MAX_LOW_STOCK_RESULTS)));
+        if (stats == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(stats);
     }
 
     /**
      * Get the Product with specified ID
      * @param   id ID of the Product to get
-     * @return  ResponseEntity with the found Product
-     *          or NOT_FOUND if no Product found
+     * @param   fields comma separated fields to return
+     * @return  ResponseEntity with the found Product and an ETag of its version, fields and format,
+     *          NOT_MODIFIED without a body if the ETag matches If-None-Match
+     *          (a hot Product is answered from the cache, without a query),
+     *          NOT_FOUND if no Product found, BAD_REQUEST for an unknown field
      */
     @GetMapping("/products/{id}")
-    public ResponseEntity<?> getProduct(@PathVariable Integer id){
+    public ResponseEntity<?> getProduct(@PathVariable Integer id,
+                                        @RequestParam(required = false) String fields,
+                                        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept){
+        Set<ProductField> selectedFields = fields == null ? null : ProductField.parse(fields);
+        if (fields != null && selectedFields == null) {
+            return ResponseEntity.badRequest().build();
+        }
         Product product = productService.findById(id);
         if (product != null){
             try {
                 return ResponseEntity
                         .ok()
-                        .eTag(Integer.toString(product.getId()))
+                        .eTag(productETag(product, selectedFields, accept))
                         .location(new URI("/products/" + product.getId()))
-                        .body(product);
+                        .body(withFields(product, selectedFields));
             } catch (URISyntaxException e) {
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
             }
@@ -53,54 +251,155 @@ public class ProductsController {
 
 
     @PostMapping("/products")
-    public ResponseEntity<?> saveProduct(@RequestBody Product product) {
-        LOGGER.info("Adding new product with name:{}", product.getName());
+    public ResponseEntity<?> saveProduct(@RequestBody Product product,
+                                         @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        LOGGER.debug("Adding new product with name:{}", product.getName());
         Product newProduct = productService.save(product);
         try {
             return ResponseEntity
                     .created(new URI("/products/" + newProduct.getId()))
-                    .eTag(Integer.toString(newProduct.getVersion()))
+                    .eTag(productETag(newProduct, null, accept))
                     .body(newProduct);
         } catch (URISyntaxException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * Create, update and delete many products in one transaction
+     * @param   request products to create and update, ids to delete
+     * @return  one result per item, in request order: creates, then updates, then deletes
+     */
+    @PostMapping("/products:batch")
+    public List<ProductBatchResult> batchProducts(@RequestBody ProductBatchRequest request) {
+        LOGGER.info("Applying batch of {} creates, {} updates and {} deletes",
+                request.getCreate().size(), request.getUpdate().size(), request.getDelete().size());
+        return productService.applyBatch(request);
+    }
+
+    /**
+     * Update the Product if it is still at the version given in If-Match, or whatever its version with
+     * If-Match: *. With write-behind enabled, If-Match: * queues the update, coalesced with
+     * other queued updates of the Product and written within the flush interval
+     * @param   id ID of the Product to update
+     * @param   ifMatch strong ETag of the Product the client last saw, or *
+     * @return  ResponseEntity with the updated Product and its new ETag,
+     *          ACCEPTED once a write-behind update is queued, SERVICE_UNAVAILABLE if the queue is full,
+     *          NOT_FOUND if no Product found, PRECONDITION_REQUIRED without If-Match,
+     *          PRECONDITION_FAILED if the Product was changed in the meantime,
+     *          CONFLICT if the body carries a version other than If-Match
+     */
     @PutMapping("/products/{id}")
     public ResponseEntity<?> updateProduct(@PathVariable Integer id,
                                            @RequestBody Product product,
-                                           @RequestHeader("If-Match") Integer ifMatch){
-        Product existingProduct = productService.findById(id);
-        if(existingProduct == null){
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                           @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept){
+        if (ifMatch == null) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_REQUIRED).build();
+        }
+        boolean anyVersion = ifMatch.trim().equals("*");
+        if (anyVersion && productWriteBehind.isEnabled()) {
+            return updateProductBehind(id, product);
+        }
+        Integer expectedVersion = anyVersion ? null : parseVersion(ifMatch);
+        if (!anyVersion && expectedVersion == null) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
+        if (!anyVersion && product.getVersion() != null && !product.getVersion().equals(expectedVersion)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        LOGGER.debug("Updating product with id:{}", id);
+
+        product.setId(id);
+        product.setVersion(expectedVersion);
+        try {
+            Product updatedProduct = anyVersion ? productService.updateAnyVersion(product)
+                    : productService.update(product);
+            if (updatedProduct == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity
+                    .ok()
+                    .eTag(productETag(updatedProduct, null, accept))
+                    .location(new URI("/products/" + updatedProduct.getId()))
+                    .body(updatedProduct);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        } catch (URISyntaxException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Current stock of a Product, without the rest of it
+     * @param   id ID of the Product
+     * @return  ResponseEntity with the id and quantity, NOT_FOUND if no Product found
+     */
+    @GetMapping("/products/{id}/quantity")
+    public ResponseEntity<?> getQuantity(@PathVariable Integer id) {
+        StockLevel stockLevel = productService.findStock(id);
+        if (stockLevel == null) {
             return ResponseEntity.notFound().build();
-        } else {
-            if(existingProduct.getVersion().equals(ifMatch)){
-                return ResponseEntity.status(HttpStatus.CONFLICT).build();
-            } else {
-                LOGGER.info("Updating product with name:{}", existingProduct.getName());
-
-                existingProduct.setName(product.getName());
-                existingProduct.setDescription(product.getDescription());
-                existingProduct.setQuantity(product.getQuantity());
-                existingProduct.setVersion(product.getVersion());
-
-                try {
-                    existingProduct = productService.update(existingProduct);
-                    return ResponseEntity
-                            .ok()
-                            .eTag(Integer.toString(existingProduct.getVersion()))
-                            .location(new URI("/products/"+ existingProduct.getId()))
-                            .body(existingProduct);
-                }catch (URISyntaxException e){
-                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-                }
+        }
+        return ResponseEntity.ok().body(stockLevel);
+    }
+
+    /**
+     * Atomically add to or take from the stock of a Product, no If-Match needed
+     * @param   id ID of the Product
+     * @param   adjustment signed delta and whether the stock may go below zero
+     * @return  ResponseEntity with the updated Product, NOT_FOUND if no Product found,
+     *          CONFLICT if there is not enough stock
+     */
+    @PostMapping("/products/{id}/quantity:adjust")
+    public ResponseEntity<?> adjustQuantity(@PathVariable Integer id, @RequestBody QuantityAdjustment adjustment,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT, required = false)
+                                                    String accept) {
+        if (adjustment.getDelta() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            Product product = productService.adjustQuantity(id, adjustment.getDelta(), adjustment.isFloorAtZero());
+            if (product == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity
+                    .ok()
+                    .eTag(productETag(product, null, accept))
+                    .location(new URI("/products/" + product.getId()))
+                    .body(product);
+        } catch (InsufficientStockException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (URISyntaxException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Reserve stock of many Products at once, all or nothing
+     * @param   reservations product ids with the positive quantity to take
+     * @return  NO_CONTENT when everything was reserved,
+     *          CONFLICT with the id of the first Product lacking stock otherwise
+     */
+    @PostMapping("/products/quantity:reserve")
+    public ResponseEntity<?> reserveQuantities(@RequestBody List<StockReservation> reservations) {
+        for (StockReservation reservation : reservations) {
+            if (reservation.getId() == null || reservation.getQuantity() == null || reservation.getQuantity() <= 0) {
+                return ResponseEntity.badRequest().build();
             }
         }
+        try {
+            productService.reserve(reservations);
+            return ResponseEntity.noContent().build();
+        } catch (InsufficientStockException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Collections.singletonMap("id", e.getProductId()));
+        }
     }
 
     @DeleteMapping("/products/{id}")
     public ResponseEntity<?> deleteProduct(@PathVariable Integer id){
-        LOGGER.info("Deleting product with id:{}", id);
+        LOGGER.debug("Deleting product with id:{}", id);
         Product existingProduct = productService.findById(id);
         if(existingProduct != null){
             productService.delete(id);
@@ -109,4 +408,130 @@ public class ProductsController {
             return ResponseEntity.notFound().build();
         }
     }
+
+    private ResponseEntity<?> lookupProducts(List<Integer> ids, int maxIds, Set<ProductField> fields) {
+        if (ids.size() > maxIds || ids.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<ProductLookupResult> results = productService.findAllById(ids);
+        return ResponseEntity.ok(withFields(results, fields));
+    }
+
+    /**
+     * Wraps the body so that the Products in it are written with {@code fields} only, all fields if null.
+     */
+    static Object withFields(Object body, Set<ProductField> fields) {
+        if (fields == null) {
+            return body;
+        }
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        value.setFilters(fieldsFilter(fields));
+        return value;
+    }
+
+    private static FilterProvider fieldsFilter(Set<ProductField> fields) {
+        return new SimpleFilterProvider().addFilter(ProductField.FILTER_ID,
+                SimpleBeanPropertyFilter.filterOutAllExcept(ProductField.properties(fields)));
+    }
+
+    /**
+     * Hash of the ids and versions on the page: any write to one of its products changes it.
+     * Spring answers NOT_MODIFIED for a matching If-None-Match before the body is serialized.
+     * The same page with other fields is another representation and gets another tag. The tag is weak:
+     * the page is the same in JSON, CBOR or Smile, gzipped or not, and Tomcat does not compress
+     * responses carrying a strong ETag.
+     */
+    static String pageETag(ProductPage page, Set<ProductField> fields) {
+        long hash = 17;
+        for (Product product : page.getItems()) {
+            hash = 31 * hash + product.getId();
+            hash = 31 * hash + (product.getVersion() == null ? 0 : product.getVersion());
+        }
+        hash = 31 * hash + (page.getNext() == null ? 0 : page.getNext());
+        StringBuilder tag = new StringBuilder("W/\"p").append(page.getItems().size())
+                .append('-').append(Long.toHexString(hash));
+        if (fields != null) {
+            tag.append('-');
+            fields.forEach(field -> tag.append(field.ordinal()));
+        }
+        return tag.append('"').toString();
+    }
+
+    /**
+     * Strong tag of one representation of the Product: its version, then the fields if not all of them are
+     * written and the format if it is not JSON, e.g. {@code "3"}, {@code "3-f03"} or {@code "3-cbor"}.
+     * Each representation has its own bytes, so its own tag; If-Match takes any of them.
+     */
+    static String productETag(Product product, Set<ProductField> fields, String accept) {
+        StringBuilder tag = new StringBuilder("\"").append(product.getVersion());
+        if (fields != null) {
+            tag.append("-f");
+            fields.forEach(field -> tag.append(field.ordinal()));
+        }
+        MediaType format = productFormat(accept);
+        if (format.equals(MediaType.APPLICATION_CBOR)) {
+            tag.append("-cbor");
+        } else if (format.equals(APPLICATION_SMILE)) {
+            tag.append("-smile");
+        }
+        return tag.append('"').toString();
+    }
+
+    /**
+     * The format a Product is written in for the Accept header: the first of JSON, CBOR and Smile
+     * that the most preferred acceptable type allows, as Spring's content negotiation picks it.
+     */
+    static MediaType productFormat(String accept) {
+        List<MediaType> acceptable;
+        try {
+            acceptable = accept == null ? Collections.singletonList(MediaType.ALL) : MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+        acceptable = new ArrayList<>(acceptable);
+        MediaType.sortBySpecificityAndQuality(acceptable);
+        for (MediaType type : acceptable) {
+            for (MediaType format : PRODUCT_FORMATS) {
+                if (type.getQualityValue() > 0 && type.isCompatibleWith(format)) {
+                    return format;
+                }
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    private ResponseEntity<?> updateProductBehind(Integer id, Product product) {
+        product.setId(id);
+        product.setVersion(null);
+        if (!productWriteBehind.submit(product)) {
+            long retryAfter = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(productWriteBehind.getFlushInterval()));
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter))
+                    .build();
+        }
+        return ResponseEntity.accepted().header(HttpHeaders.LOCATION, "/products/" + id).build();
+    }
+
+    /**
+     * Reads the version out of a strong entity tag such as {@code "3"}, {@code "3-cbor"} or a bare {@code 3}.
+     * @return the version or null if the tag is not one of ours, or weak: If-Match compares strongly
+     */
+    static Integer parseVersion(String eTag) {
+        String tag = eTag.trim();
+        if (tag.startsWith("W/")) {
+            return null;
+        }
+        if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        int representation = tag.indexOf('-');
+        if (representation > 0) {
+            tag = tag.substring(0, representation);
+        }
+        try {
+            return Integer.valueOf(tag);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
 }
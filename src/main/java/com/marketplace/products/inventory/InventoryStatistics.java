@@ -0,0 +1,240 @@
+package com.marketplace.products.inventory;
+
+import com.marketplace.products.model.InventoryStats;
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.StockLevel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Stock figures of the whole catalog behind {@code GET /products/stats}, kept up to date by every committed
+ * write instead of summing the catalog on request: the number of products, their total quantity, how many
+ * are out of stock (quantity zero or below) and those still in stock with the lowest quantities, at or below
+ * {@code products.stats.low-stock-threshold}.
+ * <p>
+ * Commits of one product may be applied out of order, a product is only replaced by a version of it at
+ * least as new. Reservations held by the inventory store count once written to the database. What still
+ * drifts, e.g. a write applied after the delete of its product or rows changed behind the service, is
+ * corrected by {@link #reconcile} against a scan of the catalog.
+ */
+@Component
+public class InventoryStatistics {
+
+    private static final Logger LOGGER = LogManager.getLogger(InventoryStatistics.class);
+
+    private static final Comparator<Stock> LOWEST_FIRST = Comparator.<Stock>comparingInt(stock -> stock.quantity)
+            .thenComparingInt(stock -> stock.id);
+
+    private final boolean enabled;
+    private final int lowStockThreshold;
+
+    private final TreeMap<Integer, Stock> stocks = new TreeMap<>();
+    private final NavigableSet<Stock> lowStock = new TreeSet<>(LOWEST_FIRST);
+    private long totalQuantity;
+    private int outOfStock;
+    private Instant reconciledAt;
+
+    /**
+     * Products written since the running reconciliation started, null if none runs.
+     * Their scanned rows may be older than what the writes installed.
+     */
+    private Set<Integer> writtenDuringReconciliation;
+
+    private final Object reconciliationLock = new Object();
+
+    private final Counter corrections;
+
+    public InventoryStatistics(MeterRegistry registry,
+                               @Value("${products.stats.enabled:true}") boolean enabled,
+                               @Value("${products.stats.low-stock-threshold:10}") int lowStockThreshold) {
+        this.enabled = enabled;
+        this.lowStockThreshold = lowStockThreshold;
+        this.corrections = Counter.builder("products.stats.corrections")
+                .description("Products whose stock figures a reconciliation had to correct")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Counts the product as committed, replacing an older version of it.
+     */
+    public synchronized void update(Product product) {
+        if (!enabled) {
+            return;
+        }
+        Stock stock = new Stock(product);
+        Stock previous = stocks.get(stock.id);
+        if (previous != null && previous.version != null && stock.version != null
+                && stock.version < previous.version) {
+            return;
+        }
+        put(stock);
+        if (writtenDuringReconciliation != null) {
+            writtenDuringReconciliation.add(stock.id);
+        }
+    }
+
+    public synchronized void remove(Integer id) {
+        if (!enabled) {
+            return;
+        }
+        Stock previous = stocks.remove(id);
+        if (previous != null) {
+            subtract(previous);
+        }
+        if (writtenDuringReconciliation != null) {
+            writtenDuringReconciliation.add(id);
+        }
+    }
+
+    /**
+     * The current figures with at most {@code lowStockLimit} products of the lowest stock, lowest first.
+     */
+    public synchronized InventoryStats stats(int lowStockLimit) {
+        List<StockLevel> lowest = new ArrayList<>(Math.min(lowStockLimit, lowStock.size()));
+        Iterator<Stock> iterator = lowStock.iterator();
+        while (iterator.hasNext() && lowest.size() < lowStockLimit) {
+            Stock stock = iterator.next();
+            lowest.add(new StockLevel(stock.id, stock.quantity));
+        }
+        return new InventoryStats(stocks.size(), totalQuantity, outOfStock, lowStockThreshold, lowest,
+                reconciledAt);
+    }
+
+    /**
+     * Brings the figures in line with the products {@code scan} hands over in id order, e.g. a stream of
+     * the catalog. Rows are compared as they come, a product written meanwhile keeps what its write
+     * installed. Scans do not overlap, a second one waits for the first.
+     * @return the number of products corrected
+     */
+    public int reconcile(Consumer<Consumer<Product>> scan) {
+        if (!enabled) {
+            return 0;
+        }
+        synchronized (reconciliationLock) {
+            boolean counted;
+            synchronized (this) {
+                counted = reconciledAt != null;
+                writtenDuringReconciliation = new HashSet<>();
+            }
+            Reconciliation reconciliation = new Reconciliation();
+            try {
+                scan.accept(reconciliation::compare);
+                synchronized (this) {
+                    reconciliation.removeMissing(null);
+                    reconciledAt = Instant.now();
+                }
+            } finally {
+                synchronized (this) {
+                    writtenDuringReconciliation = null;
+                }
+            }
+            // the first scan counts the catalog, there is nothing to correct yet
+            if (counted && reconciliation.corrected > 0) {
+                LOGGER.warn("Reconciliation corrected the stock figures of {} products", reconciliation.corrected);
+                corrections.increment(reconciliation.corrected);
+            }
+            return reconciliation.corrected;
+        }
+    }
+
+    private void put(Stock stock) {
+        Stock previous = stocks.put(stock.id, stock);
+        if (previous != null) {
+            subtract(previous);
+        }
+        totalQuantity += stock.quantity;
+        if (stock.quantity <= 0) {
+            outOfStock++;
+        } else if (stock.quantity <= lowStockThreshold) {
+            lowStock.add(stock);
+        }
+    }
+
+    private void subtract(Stock stock) {
+        totalQuantity -= stock.quantity;
+        if (stock.quantity <= 0) {
+            outOfStock--;
+        } else if (stock.quantity <= lowStockThreshold) {
+            lowStock.remove(stock);
+        }
+    }
+
+    /**
+     * One pass over the scanned rows, which come in id order.
+     */
+    private final class Reconciliation {
+
+        private Integer lastScanned;
+        private int corrected;
+
+        private void compare(Product product) {
+            synchronized (InventoryStatistics.this) {
+                Stock scanned = new Stock(product);
+                removeMissing(scanned.id);
+                lastScanned = scanned.id;
+                if (writtenDuringReconciliation.contains(scanned.id)) {
+                    return;
+                }
+                Stock counted = stocks.get(scanned.id);
+                if (counted == null || counted.quantity != scanned.quantity) {
+                    corrected++;
+                }
+                put(scanned);
+            }
+        }
+
+        /**
+         * Drops the products counted between the last scanned row and {@code before} (up to the end if null)
+         * that the scan did not find and nobody wrote meanwhile.
+         */
+        private void removeMissing(Integer before) {
+            NavigableMap<Integer, Stock> skipped = lastScanned == null ? stocks : stocks.tailMap(lastScanned, false);
+            if (before != null) {
+                skipped = skipped.headMap(before, false);
+            }
+            Iterator<Stock> iterator = skipped.values().iterator();
+            while (iterator.hasNext()) {
+                Stock stock = iterator.next();
+                if (!writtenDuringReconciliation.contains(stock.id)) {
+                    iterator.remove();
+                    subtract(stock);
+                    corrected++;
+                }
+            }
+        }
+    }
+
+    private static final class Stock {
+
+        private final int id;
+        private final int quantity;
+        private final Integer version;
+
+        private Stock(Product product) {
+            this.id = product.getId();
+            this.quantity = product.getQuantity() == null ? 0 : product.getQuantity();
+            this.version = product.getVersion();
+        }
+    }
+}
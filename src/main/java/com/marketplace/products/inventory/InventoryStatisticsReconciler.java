@@ -0,0 +1,78 @@
+package com.marketplace.products.inventory;
+
+import com.marketplace.products.service.ProductService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the catalog into the inventory statistics once the application is up, then checks them against
+ * the database every {@code products.stats.reconcile-interval} milliseconds.
+ */
+@Component
+public class InventoryStatisticsReconciler {
+
+    private static final Logger LOGGER = LogManager.getLogger(InventoryStatisticsReconciler.class);
+
+    private final InventoryStatistics inventoryStatistics;
+    private final ProductService productService;
+    private final long reconcileInterval;
+
+    private final ScheduledExecutorService reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "inventory-statistics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public InventoryStatisticsReconciler(InventoryStatistics inventoryStatistics, ProductService productService,
+                                         @Value("${products.stats.reconcile-interval:600000}")
+                                                 long reconcileInterval) {
+        this.inventoryStatistics = inventoryStatistics;
+        this.productService = productService;
+        this.reconcileInterval = reconcileInterval;
+    }
+
+    /**
+     * Until it completes, the statistics count only the products written since startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!inventoryStatistics.isEnabled()) {
+            return;
+        }
+        reconcile();
+        LOGGER.info("Inventory statistics counted {} products", inventoryStatistics.stats(0).getCount());
+        reconciler.scheduleWithFixedDelay(this::reconcileQuietly, reconcileInterval, reconcileInterval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        reconciler.shutdownNow();
+    }
+
+    /**
+     * Scans the catalog and corrects the statistics where they drifted from it.
+     * @return the number of products corrected
+     */
+    public int reconcile() {
+        return inventoryStatistics.reconcile(productService::streamAll);
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            // the figures stay as they are until the next attempt
+            LOGGER.error("Reconciling the inventory statistics failed", e);
+        }
+    }
+}
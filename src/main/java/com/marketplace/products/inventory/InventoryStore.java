@@ -0,0 +1,369 @@
+package com.marketplace.products.inventory;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.StockReservation;
+import com.marketplace.products.service.InsufficientStockException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Optional in-process stock of every product, enabled with {@code products.inventory.enabled=true},
+ * for flash sales where reservations and stock reads dominate.
+ * <p>
+ * An open-addressing table of primitive arrays keyed by product id, with linear probing and no boxing:
+ * each slot packs the quantity and the reservations not yet written to the database ({@code pending})
+ * in one {@code long}, changed with a compare-and-set. Reads and reservations take no lock and allocate
+ * nothing. The database version each quantity was read at is kept beside it and only touched under
+ * {@link #lock()}, by the write-behind flush and by writes that went through the database.
+ * <p>
+ * The table does not grow: a product that does not fit, or that is not loaded yet, is not held and takes
+ * the database path. Ids of deleted products keep their slot as a tombstone. Reservations are only checked against the
+ * stock of this instance, the store is meant for a single node taking the orders.
+ */
+@Component
+public class InventoryStore {
+
+    /**
+     * Returned for a product the store does not hold.
+     */
+    public static final int NOT_HELD = Integer.MIN_VALUE;
+
+    private static final long ABSENT = Long.MIN_VALUE;
+    /**
+     * Version of deleted products: no write of them is newer, a late one cannot bring them back.
+     */
+    private static final int TOMBSTONE_VERSION = Integer.MAX_VALUE;
+    private static final int FREE = 0;
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final boolean enabled;
+    private final int[] keys;
+    private final long[] slots;
+    private final int[] versions;
+    private final int mask;
+    private final int maxSize;
+    private int size;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public InventoryStore(@Value("${products.inventory.enabled:false}") boolean enabled,
+                          @Value("${products.inventory.capacity:262144}") int capacity) {
+        this.enabled = enabled;
+        // a power of two at least twice the capacity keeps probe sequences short
+        int tableSize = enabled ? Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2 : 1;
+        this.keys = new int[tableSize];
+        this.slots = new long[tableSize];
+        this.versions = new int[tableSize];
+        Arrays.fill(slots, ABSENT);
+        this.mask = tableSize - 1;
+        this.maxSize = enabled ? capacity : 0;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Current stock of the product, reservations not yet written included.
+     * @return the quantity or {@link #NOT_HELD}
+     */
+    public int quantity(int id) {
+        long slot = slotOf(id);
+        return slot == ABSENT ? NOT_HELD : quantityOf(slot);
+    }
+
+    /**
+     * Changes the stock by {@code delta}, to be written to the database by the next flush.
+     * @return the new quantity or {@link #NOT_HELD}
+     * @throws InsufficientStockException if {@code floorAtZero} is set and the stock would go negative
+     */
+    public int adjust(int id, int delta, boolean floorAtZero) {
+        int index = indexOf(id);
+        if (index < 0) {
+            return NOT_HELD;
+        }
+        while (true) {
+            long slot = (long) SLOTS.getVolatile(slots, index);
+            if (slot == ABSENT) {
+                return NOT_HELD;
+            }
+            long quantity = (long) quantityOf(slot) + delta;
+            long pending = (long) pendingOf(slot) + delta;
+            if (floorAtZero && quantity < 0) {
+                throw new InsufficientStockException(id);
+            }
+            if (quantity != (int) quantity || pending != (int) pending || quantity == NOT_HELD) {
+                throw new IllegalArgumentException("Stock of product " + id + " out of range");
+            }
+            if (SLOTS.compareAndSet(slots, index, slot, pack((int) quantity, (int) pending))) {
+                return (int) quantity;
+            }
+        }
+    }
+
+    /**
+     * Takes the stock for all reservations or none of them, in ascending id order.
+     * @return false, with nothing reserved, if the store does not hold every product
+     * @throws InsufficientStockException for the first product without enough stock; nothing is reserved then
+     */
+    public boolean reserve(List<StockReservation> reservations) {
+        Map<Integer, Integer> quantitiesById = new TreeMap<>();
+        for (StockReservation reservation : reservations) {
+            quantitiesById.merge(reservation.getId(), reservation.getQuantity(), Integer::sum);
+        }
+        List<Map.Entry<Integer, Integer>> taken = new ArrayList<>(quantitiesById.size());
+        try {
+            for (Map.Entry<Integer, Integer> entry : quantitiesById.entrySet()) {
+                if (adjust(entry.getKey(), -entry.getValue(), true) == NOT_HELD) {
+                    release(taken);
+                    return false;
+                }
+                taken.add(entry);
+            }
+        } catch (RuntimeException e) {
+            release(taken);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Guards the versions: held by a flush until its transaction completed, and by {@link #sync}.
+     */
+    public void lock() {
+        lock.lock();
+    }
+
+    public void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * Takes in the product as written to the database. A newer version rebases the stock on the
+     * written quantity, keeping the reservations not written yet; an older one is ignored.
+     * @return false if the product does not fit in the store
+     */
+    public boolean sync(Product product) {
+        if (!enabled || product.getId() == null || product.getId() == FREE || product.getVersion() == null) {
+            return false;
+        }
+        int written = product.getQuantity() == null ? 0 : product.getQuantity();
+        lock.lock();
+        try {
+            int index = claim(product.getId());
+            if (index < 0) {
+                return false;
+            }
+            while (true) {
+                long slot = (long) SLOTS.getVolatile(slots, index);
+                // a slot not loaded yet is at version 0, a deleted one at TOMBSTONE_VERSION
+                if (product.getVersion() <= versions[index]) {
+                    return true;
+                }
+                int pending = slot == ABSENT ? 0 : pendingOf(slot);
+                if (SLOTS.compareAndSet(slots, index, slot, pack(written + pending, pending))) {
+                    versions[index] = product.getVersion();
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the product and keeps its slot as a tombstone, syncs of it arriving late are ignored.
+     */
+    public void remove(int id) {
+        if (!enabled || id == FREE) {
+            return;
+        }
+        lock.lock();
+        try {
+            int index = claim(id);
+            if (index >= 0) {
+                SLOTS.setVolatile(slots, index, ABSENT);
+                versions[index] = TOMBSTONE_VERSION;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Products with reservations not written yet, as they stand now. Call with the lock held.
+     */
+    public List<PendingWrite> pendingWrites() {
+        List<PendingWrite> writes = new ArrayList<>();
+        for (int index = 0; index < slots.length; index++) {
+            long slot = (long) SLOTS.getVolatile(slots, index);
+            if (slot != ABSENT && pendingOf(slot) != 0) {
+                writes.add(new PendingWrite((int) KEYS.getVolatile(keys, index),
+                        quantityOf(slot), pendingOf(slot), versions[index]));
+            }
+        }
+        return writes;
+    }
+
+    /**
+     * The product's reservations not written yet, null if there are none. Call with the lock held.
+     */
+    public PendingWrite pendingWrite(int id) {
+        int index = indexOf(id);
+        long slot = index < 0 ? ABSENT : (long) SLOTS.getVolatile(slots, index);
+        if (slot == ABSENT || pendingOf(slot) == 0) {
+            return null;
+        }
+        return new PendingWrite(id, quantityOf(slot), pendingOf(slot), versions[index]);
+    }
+
+    /**
+     * Records that {@code write} is in the database at the next version. Call with the lock held.
+     */
+    public void written(PendingWrite write) {
+        int index = indexOf(write.getId());
+        if (index < 0 || versions[index] != write.getVersion()) {
+            return;
+        }
+        while (true) {
+            long slot = (long) SLOTS.getVolatile(slots, index);
+            if (slot == ABSENT) {
+                return;
+            }
+            if (SLOTS.compareAndSet(slots, index, slot, pack(quantityOf(slot), pendingOf(slot) - write.getPending()))) {
+                versions[index] = write.getVersion() + 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Products held, deleted ones included.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Products with reservations not written yet.
+     */
+    public int pendingCount() {
+        int count = 0;
+        for (int index = 0; index < slots.length; index++) {
+            long slot = (long) SLOTS.getVolatile(slots, index);
+            if (slot != ABSENT && pendingOf(slot) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void release(List<Map.Entry<Integer, Integer>> taken) {
+        for (Map.Entry<Integer, Integer> entry : taken) {
+            adjust(entry.getKey(), entry.getValue(), false);
+        }
+    }
+
+    private long slotOf(int id) {
+        int index = indexOf(id);
+        return index < 0 ? ABSENT : (long) SLOTS.getVolatile(slots, index);
+    }
+
+    private int indexOf(int id) {
+        if (!enabled || id == FREE) {
+            return -1;
+        }
+        for (int index = hash(id) & mask, probes = 0; probes <= mask; index = (index + 1) & mask, probes++) {
+            int key = (int) KEYS.getAcquire(keys, index);
+            if (key == id) {
+                return index;
+            }
+            if (key == FREE) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds or adds the slot of {@code id}, with the lock held. Keys are published after their slot
+     * is initialized, a reader that sees the key sees the slot.
+     */
+    private int claim(int id) {
+        int index = indexOf(id);
+        if (index >= 0 || size >= maxSize) {
+            return index;
+        }
+        for (index = hash(id) & mask; (int) KEYS.getAcquire(keys, index) != FREE; index = (index + 1) & mask) {
+        }
+        versions[index] = 0;
+        SLOTS.setVolatile(slots, index, ABSENT);
+        KEYS.setRelease(keys, index, id);
+        size++;
+        return index;
+    }
+
+    private static int hash(int id) {
+        // ids are sequential, spread them so neighbours do not probe into each other
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static long pack(int quantity, int pending) {
+        return ((long) quantity << 32) | (pending & 0xFFFFFFFFL);
+    }
+
+    private static int quantityOf(long slot) {
+        return (int) (slot >> 32);
+    }
+
+    private static int pendingOf(long slot) {
+        return (int) slot;
+    }
+
+    /**
+     * The stock of one product to write: {@code quantity} includes {@code pending} reserved since
+     * the database was at {@code version}.
+     */
+    public static final class PendingWrite {
+
+        private final int id;
+        private final int quantity;
+        private final int pending;
+        private final int version;
+
+        PendingWrite(int id, int quantity, int pending, int version) {
+            this.id = id;
+            this.quantity = quantity;
+            this.pending = pending;
+            this.version = version;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public int getPending() {
+            return pending;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+    }
+}
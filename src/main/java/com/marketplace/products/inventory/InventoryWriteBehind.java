@@ -0,0 +1,73 @@
+package com.marketplace.products.inventory;
+
+import com.marketplace.products.service.ProductService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the inventory store once the application is up and writes its reservations to the database
+ * every {@code products.inventory.flush-interval} milliseconds, and a last time on shutdown.
+ */
+@Component
+public class InventoryWriteBehind {
+
+    private static final Logger LOGGER = LogManager.getLogger(InventoryWriteBehind.class);
+
+    private final InventoryStore inventoryStore;
+    private final ProductService productService;
+    private final long flushInterval;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "inventory-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public InventoryWriteBehind(InventoryStore inventoryStore, ProductService productService,
+                                @Value("${products.inventory.flush-interval:200}") long flushInterval) {
+        this.inventoryStore = inventoryStore;
+        this.productService = productService;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Until it completes, products not loaded yet are reserved in the database.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!inventoryStore.isEnabled()) {
+            return;
+        }
+        productService.streamAll(inventoryStore::sync);
+        LOGGER.info("Inventory store loaded with {} products", inventoryStore.size());
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        if (inventoryStore.isEnabled()) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        try {
+            int written = productService.flushInventory();
+            LOGGER.debug("Wrote the stock of {} products", written);
+        } catch (RuntimeException e) {
+            // the reservations stay in the store for the next attempt
+            LOGGER.error("Writing the inventory failed", e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.marketplace.products.metrics;
+
+import com.marketplace.products.inventory.InventoryStore;
+import com.marketplace.products.service.ProductCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Business metrics of the products service.
+ * Every meter is registered up front so recording is a plain field access, no lookup or tag allocation.
+ * Cache counters are read from the cache's own adders when scraped instead of being counted twice.
+ */
+@Component
+public class ProductMetrics {
+
+    private final DistributionSummary pageRows;
+    private final DistributionSummary streamRows;
+    private final DistributionSummary lookupRows;
+    private final DistributionSummary createBatchSize;
+    private final DistributionSummary updateBatchSize;
+    private final DistributionSummary deleteBatchSize;
+    private final Counter versionConflicts;
+    private final Counter insufficientStock;
+    private final Counter inventoryWrites;
+
+    public ProductMetrics(MeterRegistry registry, ProductCache productCache, InventoryStore inventoryStore) {
+        FunctionCounter.builder("products.cache.requests", productCache, ProductCache::hitCount)
+                .description("Product lookups answered by the cache")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("products.cache.requests", productCache, ProductCache::missCount)
+                .description("Product lookups that went to the database")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("products.cache.evictions", productCache, ProductCache::evictionCount)
+                .description("Entries dropped to keep the cache under its maximum size")
+                .register(registry);
+        Gauge.builder("products.cache.size", productCache, ProductCache::size)
+                .description("Entries in the product cache, tombstones included")
+                .register(registry);
+
+        pageRows = rowsSummary(registry, "page");
+        streamRows = rowsSummary(registry, "stream");
+        lookupRows = rowsSummary(registry, "lookup");
+        createBatchSize = batchSummary(registry, "create");
+        updateBatchSize = batchSummary(registry, "update");
+        deleteBatchSize = batchSummary(registry, "delete");
+        versionConflicts = Counter.builder("products.update.conflicts")
+                .description("Updates refused because the product was at another version")
+                .register(registry);
+        insufficientStock = Counter.builder("products.stock.insufficient")
+                .description("Stock adjustments and reservations refused for lack of stock")
+                .register(registry);
+        if (inventoryStore.isEnabled()) {
+            Gauge.builder("products.inventory.size", inventoryStore, InventoryStore::size)
+                    .description("Products held by the inventory store")
+                    .register(registry);
+            Gauge.builder("products.inventory.pending", inventoryStore, InventoryStore::pendingCount)
+                    .description("Products with reservations not written to the database yet")
+                    .register(registry);
+        }
+        inventoryWrites = Counter.builder("products.inventory.writes")
+                .description("Product quantities written behind from the inventory store")
+                .register(registry);
+    }
+
+    public void pageServed(int rows) {
+        pageRows.record(rows);
+    }
+
+    public void streamServed(long rows) {
+        streamRows.record(rows);
+    }
+
+    public void lookupServed(int rows) {
+        lookupRows.record(rows);
+    }
+
+    public void createBatch(int size) {
+        createBatchSize.record(size);
+    }
+
+    public void updateBatch(int size) {
+        updateBatchSize.record(size);
+    }
+
+    public void deleteBatch(int size) {
+        deleteBatchSize.record(size);
+    }
+
+    public void versionConflict() {
+        versionConflicts.increment();
+    }
+
+    public void insufficientStock() {
+        insufficientStock.increment();
+    }
+
+    public void inventoryWritten(int products) {
+        inventoryWrites.increment(products);
+    }
+
+    private static DistributionSummary rowsSummary(MeterRegistry registry, String mode) {
+        return DistributionSummary.builder("products.list.rows")
+                .description("Products returned by one listing request")
+                .baseUnit("rows")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static DistributionSummary batchSummary(MeterRegistry registry, String operation) {
+        return DistributionSummary.builder("products.batch.size")
+                .description("Items in one batch section")
+                .baseUnit("items")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,71 @@
+package com.marketplace.products.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every Spring Data repository method invocation as {@code products.repository.invocations},
+ * tagged with the repository and method name.
+ * The registry is looked up lazily so this post processor does not pull it in early.
+ */
+public class RepositoryMetricsPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<MeterRegistry> registry;
+
+    public RepositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport) {
+            ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory ->
+                    factory.addRepositoryProxyPostProcessor((proxyFactory, repositoryInformation) ->
+                            proxyFactory.addAdvice(new TimingInterceptor(
+                                    repositoryInformation.getRepositoryInterface().getSimpleName()))));
+        }
+        return bean;
+    }
+
+    private final class TimingInterceptor implements MethodInterceptor {
+
+        private final String repository;
+        private final ConcurrentHashMap<Method, Timer> timers = new ConcurrentHashMap<>();
+
+        private TimingInterceptor(String repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Timer timer = timers.get(invocation.getMethod());
+            if (timer == null) {
+                timer = timers.computeIfAbsent(invocation.getMethod(), this::timer);
+            }
+            long start = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } finally {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private Timer timer(Method method) {
+            return Timer.builder("products.repository.invocations")
+                    .description("Time spent in repository methods, including the database round trip")
+                    .tag("repository", repository)
+                    .tag("method", method.getName())
+                    .publishPercentileHistogram()
+                    .register(registry.getObject());
+        }
+    }
+}
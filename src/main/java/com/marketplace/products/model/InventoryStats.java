@@ -0,0 +1,53 @@
+package com.marketplace.products.model;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Response of {@code GET /products/stats}: stock figures of the whole catalog. {@code lowStock} lists the
+ * products in stock with at most {@code lowStockThreshold} items, lowest first; {@code reconciledAt} is when
+ * the figures were last checked against the database, null before the first check.
+ */
+public class InventoryStats {
+
+    private final int count;
+    private final long totalQuantity;
+    private final int outOfStock;
+    private final int lowStockThreshold;
+    private final List<StockLevel> lowStock;
+    private final Instant reconciledAt;
+
+    public InventoryStats(int count, long totalQuantity, int outOfStock, int lowStockThreshold,
+                          List<StockLevel> lowStock, Instant reconciledAt) {
+        this.count = count;
+        this.totalQuantity = totalQuantity;
+        this.outOfStock = outOfStock;
+        this.lowStockThreshold = lowStockThreshold;
+        this.lowStock = lowStock;
+        this.reconciledAt = reconciledAt;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    public int getOutOfStock() {
+        return outOfStock;
+    }
+
+    public int getLowStockThreshold() {
+        return lowStockThreshold;
+    }
+
+    public List<StockLevel> getLowStock() {
+        return lowStock;
+    }
+
+    public Instant getReconciledAt() {
+        return reconciledAt;
+    }
+}
@@ -1,20 +1,52 @@
 package com.marketplace.products.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Table;
+import javax.persistence.Version;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "product_name", columnList = "name"),
+        @Index(name = "product_updated_at_id", columnList = "updatedAt, id")
+})
 public class Product {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @GenericGenerator(name = "product_seq", strategy = "com.marketplace.products.sharding.ShardAwareSequenceGenerator",
+            parameters = {
+                    @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "product_seq"),
+                    @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")
+            })
     private Integer id;
     private String name;
     private String description;
     private Integer quantity;
+    @Version
     private Integer version;
+    /**
+     * Maintained here for entity writes and by the bulk update queries; read-only for clients.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant createdAt;
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant updatedAt;
 
 
     public Product() {
@@ -28,6 +60,12 @@ public class Product {
         this.version = version;
     }
 
+    public Product(Product other) {
+        this(other.id, other.name, other.description, other.quantity, other.version);
+        this.createdAt = other.createdAt;
+        this.updatedAt = other.updatedAt;
+    }
+
     public Product(String name, String description, Integer quantity) {
         this.name = name;
         this.description = description;
@@ -74,6 +112,41 @@ public class Product {
         this.version = version;
     }
 
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @PrePersist
+    void onCreate() {
+        createdAt = timestamp();
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    void onUpdate() {
+        updatedAt = timestamp();
+    }
+
+    /**
+     * The current time at the microsecond precision of the timestamp columns,
+     * so a timestamp handed out before a write compares equal to the one read back.
+     */
+    public static Instant timestamp() {
+        return Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
     @Override
     public String toString() {
         return "Product{" +
@@ -82,6 +155,7 @@ public class Product {
                 ", description='" + description + '\'' +
                 ", quantity=" + quantity +
                 ", version=" + version +
+                ", updatedAt=" + updatedAt +
                 '}';
     }
 }
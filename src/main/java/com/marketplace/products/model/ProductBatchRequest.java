@@ -0,0 +1,39 @@
+package com.marketplace.products.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Body of {@code POST /products:batch}: products to create, products to update
+ * (matched by id) and ids to delete. Any section may be left out.
+ */
+public class ProductBatchRequest {
+
+    private List<Product> create = new ArrayList<>();
+    private List<Product> update = new ArrayList<>();
+    private List<Integer> delete = new ArrayList<>();
+
+    public List<Product> getCreate() {
+        return create;
+    }
+
+    public void setCreate(List<Product> create) {
+        this.create = create == null ? new ArrayList<>() : create;
+    }
+
+    public List<Product> getUpdate() {
+        return update;
+    }
+
+    public void setUpdate(List<Product> update) {
+        this.update = update == null ? new ArrayList<>() : update;
+    }
+
+    public List<Integer> getDelete() {
+        return delete;
+    }
+
+    public void setDelete(List<Integer> delete) {
+        this.delete = delete == null ? new ArrayList<>() : delete;
+    }
+}
@@ -0,0 +1,63 @@
+package com.marketplace.products.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one item of a batch, {@code index} is its position in the request section.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductBatchResult {
+
+    public enum Operation {
+        CREATE, UPDATE, DELETE
+    }
+
+    public enum Status {
+        CREATED, UPDATED, DELETED, NOT_FOUND, CONFLICT, INVALID
+    }
+
+    private final Operation operation;
+    private final int index;
+    private final Integer id;
+    private final Integer version;
+    private final Status status;
+
+    public ProductBatchResult(Operation operation, int index, Integer id, Integer version, Status status) {
+        this.operation = operation;
+        this.index = index;
+        this.id = id;
+        this.version = version;
+        this.status = status;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductBatchResult{" +
+                "operation=" + operation +
+                ", index=" + index +
+                ", id=" + id +
+                ", version=" + version +
+                ", status=" + status +
+                '}';
+    }
+}
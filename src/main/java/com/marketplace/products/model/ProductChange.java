@@ -0,0 +1,119 @@
+package com.marketplace.products.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.marketplace.products.sharding.ShardAwareSequenceGenerator;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import java.time.Instant;
+
+/**
+ * One entry of the product change log, written in the transaction of the change itself.
+ * {@code id} orders the log; created and updated entries carry the product as written,
+ * deleted entries only its id.
+ */
+@Entity
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductChange {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_change_seq")
+    @GenericGenerator(name = "product_change_seq", strategy = "com.marketplace.products.sharding.ShardAwareSequenceGenerator",
+            parameters = {
+                    @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "product_change_seq"),
+                    @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50"),
+                    @Parameter(name = ShardAwareSequenceGenerator.GLOBAL_PARAM, value = "true")
+            })
+    private Long id;
+    @Enumerated(EnumType.STRING)
+    private Type type;
+    private Integer productId;
+    private String name;
+    private String description;
+    private Integer quantity;
+    private Integer version;
+    private Instant changedAt;
+
+    public ProductChange() {
+    }
+
+    public ProductChange(Type type, Product product) {
+        this.type = type;
+        this.productId = product.getId();
+        this.name = product.getName();
+        this.description = product.getDescription();
+        this.quantity = product.getQuantity();
+        this.version = product.getVersion();
+        this.changedAt = product.getUpdatedAt() == null ? Instant.now() : product.getUpdatedAt();
+    }
+
+    public static ProductChange deleted(Integer productId) {
+        ProductChange change = new ProductChange();
+        change.type = Type.DELETED;
+        change.productId = productId;
+        change.changedAt = Instant.now();
+        return change;
+    }
+
+    /**
+     * The product as written by a created or updated change, without its creation time.
+     */
+    public Product toProduct() {
+        Product product = new Product(productId, name, description, quantity, version);
+        product.setUpdatedAt(changedAt);
+        return product;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Integer getProductId() {
+        return productId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductChange{" +
+                "id=" + id +
+                ", type=" + type +
+                ", productId=" + productId +
+                ", version=" + version +
+                '}';
+    }
+}
@@ -0,0 +1,26 @@
+package com.marketplace.products.model;
+
+import java.util.List;
+
+/**
+ * Changes of the log in order; {@code next} is the cursor to pass as {@code after} for the
+ * following ones, the same as the one requested if there were none.
+ */
+public class ProductChangePage {
+
+    private final List<ProductChange> changes;
+    private final long next;
+
+    public ProductChangePage(List<ProductChange> changes, long next) {
+        this.changes = changes;
+        this.next = next;
+    }
+
+    public List<ProductChange> getChanges() {
+        return changes;
+    }
+
+    public long getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,66 @@
+package com.marketplace.products.model;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Product attributes that can be asked for with {@code fields=}, named as in the JSON representation.
+ */
+public enum ProductField {
+
+    ID("id"),
+    NAME("name"),
+    DESCRIPTION("description"),
+    QUANTITY("quantity"),
+    VERSION("version"),
+    CREATED_AT("createdAt"),
+    UPDATED_AT("updatedAt");
+
+    /**
+     * Id of the Jackson filter that leaves out the fields not asked for.
+     */
+    public static final String FILTER_ID = "productFields";
+
+    private final String property;
+
+    ProductField(String property) {
+        this.property = property;
+    }
+
+    /**
+     * Name of the entity attribute and JSON property.
+     */
+    public String property() {
+        return property;
+    }
+
+    /**
+     * Parses a comma separated list of property names such as {@code id,name,updatedAt}, in any case.
+     * @return the fields, or null if the list is blank or names an unknown field
+     */
+    public static Set<ProductField> parse(String fields) {
+        Set<ProductField> parsed = EnumSet.noneOf(ProductField.class);
+        for (String field : fields.split(",")) {
+            String trimmed = field.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            ProductField match = null;
+            for (ProductField candidate : values()) {
+                if (candidate.property.equalsIgnoreCase(trimmed)) {
+                    match = candidate;
+                }
+            }
+            if (match == null) {
+                return null;
+            }
+            parsed.add(match);
+        }
+        return parsed.isEmpty() ? null : parsed;
+    }
+
+    public static Set<String> properties(Set<ProductField> fields) {
+        return fields.stream().map(ProductField::property).collect(Collectors.toSet());
+    }
+}
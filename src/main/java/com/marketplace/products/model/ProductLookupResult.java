@@ -0,0 +1,40 @@
+package com.marketplace.products.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One requested id of a bulk lookup: the product, or {@code found=false} without one if no product has this id.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductLookupResult {
+
+    private final Integer id;
+    private final boolean found;
+    private final Product product;
+
+    private ProductLookupResult(Integer id, Product product) {
+        this.id = id;
+        this.found = product != null;
+        this.product = product;
+    }
+
+    public static ProductLookupResult found(Product product) {
+        return new ProductLookupResult(product.getId(), product);
+    }
+
+    public static ProductLookupResult missing(Integer id) {
+        return new ProductLookupResult(id, null);
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+}
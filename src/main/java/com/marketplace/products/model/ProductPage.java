@@ -0,0 +1,43 @@
+package com.marketplace.products.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * One keyset page of products ordered by id, or by modification time then id.
+ * {@code next} is the cursor to pass as {@code after} for the following page,
+ * or null when this is the last page. Pages by modification time also carry
+ * {@code nextModifiedSince}, to pass as {@code modifiedSince}, on the last page too: there
+ * {@code next} may be null and the cursor is where to poll from for later changes.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductPage {
+
+    private final List<Product> items;
+    private final Integer next;
+    private final Instant nextModifiedSince;
+
+    public ProductPage(List<Product> items, Integer next) {
+        this(items, next, null);
+    }
+
+    public ProductPage(List<Product> items, Integer next, Instant nextModifiedSince) {
+        this.items = items;
+        this.next = next;
+        this.nextModifiedSince = nextModifiedSince;
+    }
+
+    public List<Product> getItems() {
+        return items;
+    }
+
+    public Integer getNext() {
+        return next;
+    }
+
+    public Instant getNextModifiedSince() {
+        return nextModifiedSince;
+    }
+}
@@ -0,0 +1,35 @@
+package com.marketplace.products.model;
+
+/**
+ * Body of {@code POST /products/{id}/quantity:adjust}: a signed change of stock.
+ * With {@code floorAtZero} (the default) an adjustment that would leave the stock negative is refused.
+ */
+public class QuantityAdjustment {
+
+    private Integer delta;
+    private boolean floorAtZero = true;
+
+    public QuantityAdjustment() {
+    }
+
+    public QuantityAdjustment(Integer delta, boolean floorAtZero) {
+        this.delta = delta;
+        this.floorAtZero = floorAtZero;
+    }
+
+    public Integer getDelta() {
+        return delta;
+    }
+
+    public void setDelta(Integer delta) {
+        this.delta = delta;
+    }
+
+    public boolean isFloorAtZero() {
+        return floorAtZero;
+    }
+
+    public void setFloorAtZero(boolean floorAtZero) {
+        this.floorAtZero = floorAtZero;
+    }
+}
@@ -0,0 +1,23 @@
+package com.marketplace.products.model;
+
+/**
+ * Response of {@code GET /products/{id}/quantity}: the current stock of product {@code id}.
+ */
+public class StockLevel {
+
+    private final int id;
+    private final int quantity;
+
+    public StockLevel(int id, int quantity) {
+        this.id = id;
+        this.quantity = quantity;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+}
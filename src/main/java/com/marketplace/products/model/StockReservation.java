@@ -0,0 +1,34 @@
+package com.marketplace.products.model;
+
+/**
+ * One line of {@code POST /products/quantity:reserve}: take {@code quantity} items of product {@code id}.
+ */
+public class StockReservation {
+
+    private Integer id;
+    private Integer quantity;
+
+    public StockReservation() {
+    }
+
+    public StockReservation(Integer id, Integer quantity) {
+        this.id = id;
+        this.quantity = quantity;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+}
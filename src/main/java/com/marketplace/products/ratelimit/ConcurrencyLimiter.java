@@ -0,0 +1,132 @@
+package com.marketplace.products.ratelimit;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Adaptive limit on requests in flight, enabled with {@code products.load-shedding.enabled=true}.
+ * <p>
+ * The limit grows by one per limit's worth of requests served within {@code products.load-shedding.target-latency}
+ * milliseconds while it is at least half used, and shrinks by a tenth when a request takes longer or threads are
+ * waiting for a database connection, at most once per target latency. It stays between
+ * {@code min-limit} and {@code max-limit}. Requests over the limit are refused before they queue for the pool.
+ */
+@Component
+public class ConcurrencyLimiter {
+
+    private static final Logger LOGGER = LogManager.getLogger(ConcurrencyLimiter.class);
+
+    private static final double BACKOFF = 0.9;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatency;
+    private final IntSupplier connectionWaiters;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private long lastDecrease;
+
+    @Autowired
+    public ConcurrencyLimiter(DataSource dataSource,
+                              @Value("${products.load-shedding.enabled:false}") boolean enabled,
+                              @Value("${products.load-shedding.initial-limit:20}") int initialLimit,
+                              @Value("${products.load-shedding.min-limit:4}") int minLimit,
+                              @Value("${products.load-shedding.max-limit:200}") int maxLimit,
+                              @Value("${products.load-shedding.target-latency:100}") long targetLatency) {
+        this(enabled, initialLimit, minLimit, maxLimit, targetLatency, connectionWaiters(dataSource));
+    }
+
+    public ConcurrencyLimiter(boolean enabled, int initialLimit, int minLimit, int maxLimit, long targetLatency,
+                              IntSupplier connectionWaiters) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Concurrency limits must satisfy 1 <= min <= initial <= max");
+        }
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatency = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+        this.connectionWaiters = connectionWaiters;
+        this.limit = initialLimit;
+        this.lastDecrease = System.nanoTime() - this.targetLatency;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Admits a request if fewer than the limit are in flight; {@link #release} it once done.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Ends an admitted request that took {@code latency} nanoseconds and adapts the limit to it.
+     */
+    public void release(long latency) {
+        int current = inFlight.getAndDecrement();
+        boolean overloaded = latency > targetLatency || connectionWaiters.getAsInt() > 0;
+        synchronized (this) {
+            if (overloaded) {
+                long now = System.nanoTime();
+                if (now - lastDecrease > targetLatency) {
+                    lastDecrease = now;
+                    limit = Math.max(minLimit, limit * BACKOFF);
+                }
+            } else if (current * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Threads waiting for a connection of the Hikari pool behind {@code dataSource}, 0 if it is not one.
+     */
+    private static IntSupplier connectionWaiters(DataSource dataSource) {
+        HikariDataSource hikari;
+        try {
+            hikari = dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            hikari = null;
+        }
+        if (hikari == null) {
+            LOGGER.info("Load shedding does not watch the connection pool, it is not a Hikari pool");
+            return () -> 0;
+        }
+        HikariDataSource pool = hikari;
+        return () -> {
+            HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+            return bean == null ? 0 : bean.getThreadsAwaitingConnection();
+        };
+    }
+}
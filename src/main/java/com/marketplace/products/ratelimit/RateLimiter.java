@@ -0,0 +1,154 @@
+package com.marketplace.products.ratelimit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request budgets of {@code products.rate-limit}: a token bucket per client and one for all clients,
+ * for reads and writes apart. A request takes a token from the bucket of its client, then from the global one;
+ * refused by the global one, it gives the client's token back, the client did not get to make the request.
+ * <p>
+ * Buckets of clients that are full again are forgotten every minute, they hold nothing a new one would not.
+ * At most {@code products.rate-limit.max-clients} clients are tracked per kind; while that many are, clients
+ * without a bucket share one, so a flood of new clients cannot grow the maps or escape its budget.
+ */
+@Component
+public class RateLimiter {
+
+    public enum Kind {
+        READ, WRITE
+    }
+
+    /**
+     * What refused a request, if anything.
+     */
+    public enum Limit {
+        CLIENT, GLOBAL
+    }
+
+    private final boolean enabled;
+    private final double clientReadRate;
+    private final int clientReadBurst;
+    private final double clientWriteRate;
+    private final int clientWriteBurst;
+    private final TokenBucket globalReads;
+    private final TokenBucket globalWrites;
+    private final Map<String, TokenBucket> clientReads = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> clientWrites = new ConcurrentHashMap<>();
+    private final int maxClients;
+    private final TokenBucket overflowReads;
+    private final TokenBucket overflowWrites;
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rate-limit-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RateLimiter(@Value("${products.rate-limit.enabled:false}") boolean enabled,
+                       @Value("${products.rate-limit.client.reads-per-second:50}") double clientReadRate,
+                       @Value("${products.rate-limit.client.read-burst:100}") int clientReadBurst,
+                       @Value("${products.rate-limit.client.writes-per-second:10}") double clientWriteRate,
+                       @Value("${products.rate-limit.client.write-burst:20}") int clientWriteBurst,
+                       @Value("${products.rate-limit.global.reads-per-second:2000}") double globalReadRate,
+                       @Value("${products.rate-limit.global.read-burst:2000}") int globalReadBurst,
+                       @Value("${products.rate-limit.global.writes-per-second:500}") double globalWriteRate,
+                       @Value("${products.rate-limit.global.write-burst:500}") int globalWriteBurst,
+                       @Value("${products.rate-limit.max-clients:10000}") int maxClients) {
+        this.enabled = enabled;
+        this.clientReadRate = clientReadRate;
+        this.clientReadBurst = clientReadBurst;
+        this.clientWriteRate = clientWriteRate;
+        this.clientWriteBurst = clientWriteBurst;
+        long now = System.nanoTime();
+        this.globalReads = new TokenBucket(globalReadRate, globalReadBurst, now);
+        this.globalWrites = new TokenBucket(globalWriteRate, globalWriteBurst, now);
+        this.maxClients = maxClients;
+        this.overflowReads = new TokenBucket(clientReadRate, clientReadBurst, now);
+        this.overflowWrites = new TokenBucket(clientWriteRate, clientWriteBurst, now);
+        if (enabled) {
+            sweeper.scheduleWithFixedDelay(this::forgetIdleClients, 1, 1, TimeUnit.MINUTES);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes a token for a request of {@code client}.
+     * @return null if the request may go ahead, otherwise the budget it exceeds
+     */
+    public Refusal tryAcquire(String client, Kind kind) {
+        long now = System.nanoTime();
+        TokenBucket clientBucket = kind == Kind.READ
+                ? bucketOf(clientReads, client, overflowReads, clientReadRate, clientReadBurst, now)
+                : bucketOf(clientWrites, client, overflowWrites, clientWriteRate, clientWriteBurst, now);
+        long wait = clientBucket.tryAcquire(now);
+        if (wait > 0) {
+            return new Refusal(Limit.CLIENT, wait);
+        }
+        wait = (kind == Kind.READ ? globalReads : globalWrites).tryAcquire(now);
+        if (wait > 0) {
+            clientBucket.release(now);
+            return new Refusal(Limit.GLOBAL, wait);
+        }
+        return null;
+    }
+
+    public int clientCount() {
+        return clientReads.size() + clientWrites.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    private TokenBucket bucketOf(Map<String, TokenBucket> buckets, String client, TokenBucket overflow,
+                                 double rate, int burst, long now) {
+        TokenBucket bucket = buckets.get(client);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxClients) {
+            return overflow;
+        }
+        return buckets.computeIfAbsent(client, key -> new TokenBucket(rate, burst, now));
+    }
+
+    private void forgetIdleClients() {
+        long now = System.nanoTime();
+        clientReads.values().removeIf(bucket -> bucket.isFull(now));
+        clientWrites.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    /**
+     * A request over budget, with how long until the budget has room for it.
+     */
+    public static final class Refusal {
+
+        private final Limit limit;
+        private final long waitNanos;
+
+        Refusal(Limit limit, long waitNanos) {
+            this.limit = limit;
+            this.waitNanos = waitNanos;
+        }
+
+        public Limit getLimit() {
+            return limit;
+        }
+
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+    }
+}
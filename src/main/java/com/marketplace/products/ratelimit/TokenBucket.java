@@ -0,0 +1,63 @@
+package com.marketplace.products.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket refilling {@code permitsPerSecond} tokens a second up to {@code burst} tokens, starting full.
+ * <p>
+ * Kept as the time the bucket is full again, so taking a token is one compare-and-set and an idle bucket
+ * needs no refill: a bucket that is full again is the same as a new one.
+ */
+public class TokenBucket {
+
+    private final long interval;
+    private final long capacity;
+    private final AtomicLong fullAt;
+
+    public TokenBucket(double permitsPerSecond, int burst, long now) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("A token bucket needs a positive rate and burst");
+        }
+        this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.capacity = interval * burst;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes a token at {@code now}, in {@link System#nanoTime()} units.
+     * @return 0 if a token was taken, otherwise the nanoseconds until one is there
+     */
+    public long tryAcquire(long now) {
+        while (true) {
+            long full = fullAt.get();
+            long next = Math.max(full, now) + interval;
+            long wait = next - now - capacity;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(full, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken for a request that did not go ahead, up to a full bucket.
+     */
+    public void release(long now) {
+        while (true) {
+            long full = fullAt.get();
+            if (full - now <= 0 || fullAt.compareAndSet(full, Math.max(full - interval, now))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Whether the bucket holds all its tokens at {@code now}.
+     */
+    public boolean isFull(long now) {
+        return fullAt.get() - now <= 0;
+    }
+}
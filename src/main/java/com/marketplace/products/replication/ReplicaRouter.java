@@ -0,0 +1,245 @@
+package com.marketplace.products.replication;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Sends reads to the read replicas listed in {@code products.replicas.urls}, enabled with
+ * {@code products.replicas.enabled=true}.
+ * <p>
+ * Reads run through {@link #read} take turns on the replicas. A replica only serves a read if it has caught
+ * up with the last write it has to show: of the product read, or of any product for reads of the catalog.
+ * Every {@code products.replicas.check-interval} milliseconds each replica is checked: with
+ * {@code products.replicas.lag-query}, returning its lag in milliseconds, if set, otherwise its lag is taken
+ * to be {@code products.replicas.assumed-lag}. Replicas that cannot be reached or lag more than
+ * {@code products.replicas.max-lag} serve no reads. Reads no replica can serve go to the primary, so a client
+ * always reads its own writes.
+ * <p>
+ * Statements on the replicas run in read-only transactions or without one; writes always go to the primary.
+ */
+@Component
+public class ReplicaRouter {
+
+    private static final Logger LOGGER = LogManager.getLogger(ReplicaRouter.class);
+
+    /**
+     * Lag of replicas that serve no reads.
+     */
+    private static final long UNAVAILABLE = Long.MAX_VALUE;
+
+    private static final ThreadLocal<Integer> REPLICA = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final long assumedLag;
+    private final long maxLag;
+    private final long checkInterval;
+    private final String lagQuery;
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+
+    private final AtomicLongArray lags;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final AtomicLong lastWrite = new AtomicLong();
+    private final Map<Integer, Long> lastWrites = new ConcurrentHashMap<>();
+
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+
+    private final ScheduledExecutorService checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-replicas");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReplicaRouter(MeterRegistry registry,
+                         @Value("${products.replicas.enabled:false}") boolean enabled,
+                         @Value("${products.replicas.urls:}") List<String> urls,
+                         @Value("${products.replicas.pool-size:10}") int poolSize,
+                         @Value("${products.replicas.assumed-lag:1000}") long assumedLag,
+                         @Value("${products.replicas.max-lag:5000}") long maxLag,
+                         @Value("${products.replicas.lag-query:}") String lagQuery,
+                         @Value("${products.replicas.check-interval:1000}") long checkInterval,
+                         @Value("${products.sharding.enabled:false}") boolean sharded,
+                         @Value("${spring.datasource.username:sa}") String username,
+                         @Value("${spring.datasource.password:}") String password) {
+        this.enabled = enabled;
+        this.assumedLag = assumedLag;
+        this.maxLag = maxLag;
+        this.checkInterval = checkInterval;
+        this.lagQuery = lagQuery.trim();
+        if (enabled && sharded) {
+            throw new IllegalArgumentException("Read replicas are not supported together with sharding");
+        }
+        if (enabled && urls.isEmpty()) {
+            throw new IllegalArgumentException("products.replicas.urls lists no replica");
+        }
+        if (enabled) {
+            for (int replica = 0; replica < urls.size(); replica++) {
+                HikariDataSource dataSource = new HikariDataSource();
+                dataSource.setPoolName("products-replica-" + replica);
+                dataSource.setJdbcUrl(urls.get(replica).trim());
+                dataSource.setUsername(username);
+                dataSource.setPassword(password);
+                dataSource.setMaximumPoolSize(poolSize);
+                dataSource.setReadOnly(true);
+                dataSources.add(dataSource);
+            }
+        }
+        lags = new AtomicLongArray(dataSources.size());
+        for (int replica = 0; replica < dataSources.size(); replica++) {
+            lags.set(replica, UNAVAILABLE);
+        }
+
+        replicaReads = readsCounter(registry, "replica");
+        primaryReads = readsCounter(registry, "primary");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        checkReplicas();
+        checker.scheduleWithFixedDelay(this::checkReplicas, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<DataSource> getDataSources() {
+        return Collections.unmodifiableList(dataSources);
+    }
+
+    /**
+     * Runs {@code action} on a replica that shows the last write of product {@code id}, of any product if
+     * {@code id} is null, or on the primary if no replica does.
+     */
+    public <T> T read(Integer id, Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+        int replica = freshReplica(id == null ? lastWrite.get() : lastWrites.getOrDefault(id, 0L));
+        if (replica < 0) {
+            primaryReads.increment();
+            return action.get();
+        }
+        replicaReads.increment();
+        Integer previous = REPLICA.get();
+        REPLICA.set(replica);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                REPLICA.remove();
+            } else {
+                REPLICA.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Records writes of the products {@code ids}, reads of them stay on the primary until
+     * the replicas caught up.
+     */
+    public void written(Collection<Integer> ids) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Integer id : ids) {
+            if (id != null) {
+                lastWrites.put(id, now);
+            }
+        }
+        lastWrite.set(now);
+    }
+
+    /**
+     * Measures the lag of every replica and forgets writes all usable replicas show by now.
+     */
+    public void checkReplicas() {
+        for (int replica = 0; replica < dataSources.size(); replica++) {
+            long lag = measureLag(dataSources.get(replica));
+            if (lag > maxLag && lags.get(replica) <= maxLag) {
+                LOGGER.warn("Replica {} stops serving reads, lag {} ms", replica, lag == UNAVAILABLE ? "unknown" : lag);
+            }
+            lags.set(replica, lag);
+        }
+        long seen = System.currentTimeMillis() - maxLag;
+        lastWrites.values().removeIf(written -> written < seen);
+    }
+
+    @PreDestroy
+    public void close() {
+        checker.shutdownNow();
+        dataSources.forEach(HikariDataSource::close);
+    }
+
+    /**
+     * The replica bound to the current thread, null if reads go to the primary.
+     */
+    static Integer boundReplica() {
+        return REPLICA.get();
+    }
+
+    private int freshReplica(long written) {
+        long elapsed = System.currentTimeMillis() - written;
+        int first = nextReplica.getAndIncrement();
+        for (int i = 0; i < dataSources.size(); i++) {
+            int replica = Math.floorMod(first + i, dataSources.size());
+            long lag = lags.get(replica);
+            if (lag <= maxLag && lag < elapsed) {
+                return replica;
+            }
+        }
+        return -1;
+    }
+
+    private long measureLag(DataSource replica) {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement()) {
+            if (lagQuery.isEmpty()) {
+                return connection.isValid(1) ? assumedLag : UNAVAILABLE;
+            }
+            try (ResultSet resultSet = statement.executeQuery(lagQuery)) {
+                return resultSet.next() ? Math.max(0, resultSet.getLong(1)) : UNAVAILABLE;
+            }
+        } catch (SQLException e) {
+            LOGGER.debug("Checking replica lag failed", e);
+            return UNAVAILABLE;
+        }
+    }
+
+    private static Counter readsCounter(MeterRegistry registry, String target) {
+        return Counter.builder("products.replica.reads")
+                .description("Reads routed by freshness of the replicas")
+                .tag("target", target)
+                .register(registry);
+    }
+}
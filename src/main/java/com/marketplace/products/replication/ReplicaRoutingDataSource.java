@@ -0,0 +1,23 @@
+package com.marketplace.products.replication;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Hands out connections of the replica bound to the current thread for statements outside of
+ * a transaction or in a read-only one, of the primary otherwise.
+ */
+class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer replica = ReplicaRouter.boundReplica();
+        if (replica == null || (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly())) {
+            return PRIMARY;
+        }
+        return replica;
+    }
+}
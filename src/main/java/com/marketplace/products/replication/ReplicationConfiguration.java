@@ -0,0 +1,59 @@
+package com.marketplace.products.replication;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the single datasource with one routing reads to the replicas. Only the primary is migrated,
+ * the replicas get the schema by replication.
+ */
+@Configuration
+@ConditionalOnProperty(name = "products.replicas.enabled", havingValue = "true")
+public class ReplicationConfiguration {
+
+    private HikariDataSource primaryDataSource;
+
+    /**
+     * Lazy connections so a read takes one once its first statement runs, after it was bound to a replica.
+     * The primary is the pool of {@code spring.datasource}, which Spring Boot no longer creates itself.
+     */
+    @Bean
+    @Primary
+    public DataSource replicatedDataSource(DataSourceProperties properties, Environment environment,
+                                           ReplicaRouter replicaRouter) {
+        primaryDataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primaryDataSource));
+        List<DataSource> replicas = replicaRouter.getDataSources();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ReplicaRoutingDataSource.PRIMARY, primaryDataSource);
+        for (int replica = 0; replica < replicas.size(); replica++) {
+            targets.put(replica, replicas.get(replica));
+        }
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource();
+        routingDataSource.setTargetDataSources(targets);
+        routingDataSource.setDefaultTargetDataSource(primaryDataSource);
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (primaryDataSource != null) {
+            primaryDataSource.close();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.marketplace.products.repository;
+
+import com.marketplace.products.model.ProductChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.List;
+
+public interface ProductChangeRepository extends CrudRepository<ProductChange, Long> {
+
+    /**
+     * Changes with {@code after < id < before} in log order.
+     */
+    List<ProductChange> findByIdGreaterThanAndIdLessThanOrderByIdAsc(Long after, Long before, Pageable pageable);
+
+    /**
+     * The last change with {@code id < before}, null if there is none.
+     */
+    ProductChange findTopByIdLessThanOrderByIdDesc(Long before);
+}
@@ -0,0 +1,20 @@
+package com.marketplace.products.repository;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductField;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Queries selecting only some columns of the product table.
+ */
+public interface ProductProjectionRepository {
+
+    /**
+     * Keyset page like {@link ProductRepository#findByIdGreaterThanOrderByIdAsc}, selecting only the
+     * id, the version and {@code fields}. The other attributes of the returned products are null;
+     * they are plain objects, not managed entities.
+     */
+    List<Product> findPageWithFields(Integer after, int limit, Set<ProductField> fields);
+}
@@ -0,0 +1,87 @@
+package com.marketplace.products.repository;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductField;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds a tuple query over exactly the requested columns, so large columns such as the
+ * description are neither read from the database nor materialized when not asked for.
+ */
+class ProductProjectionRepositoryImpl implements ProductProjectionRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Product> findPageWithFields(Integer after, int limit, Set<ProductField> fields) {
+        // the id is the cursor and the version goes into the page ETag, both are always selected
+        Set<ProductField> selected = EnumSet.of(ProductField.ID, ProductField.VERSION);
+        selected.addAll(fields);
+
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<Product> product = query.from(Product.class);
+        List<Selection<?>> selections = new ArrayList<>(selected.size());
+        for (ProductField field : selected) {
+            selections.add(product.get(field.property()));
+        }
+        query.multiselect(selections)
+                .where(builder.greaterThan(product.<Integer>get("id"), after))
+                .orderBy(builder.asc(product.get("id")));
+
+        List<Tuple> rows = entityManager.createQuery(query).setMaxResults(limit).getResultList();
+        List<Product> products = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            products.add(toProduct(row, selected));
+        }
+        return products;
+    }
+
+    /**
+     * Tuple elements come in the iteration order of {@code selected}, an EnumSet.
+     */
+    private static Product toProduct(Tuple row, Set<ProductField> selected) {
+        Product product = new Product();
+        int index = 0;
+        for (ProductField field : selected) {
+            Object value = row.get(index++);
+            switch (field) {
+                case ID:
+                    product.setId((Integer) value);
+                    break;
+                case NAME:
+                    product.setName((String) value);
+                    break;
+                case DESCRIPTION:
+                    product.setDescription((String) value);
+                    break;
+                case QUANTITY:
+                    product.setQuantity((Integer) value);
+                    break;
+                case VERSION:
+                    product.setVersion((Integer) value);
+                    break;
+                case CREATED_AT:
+                    product.setCreatedAt((Instant) value);
+                    break;
+                case UPDATED_AT:
+                    product.setUpdatedAt((Instant) value);
+                    break;
+            }
+        }
+        return product;
+    }
+}
@@ -1,11 +1,104 @@
 package com.marketplace.products.repository;
 
 import com.marketplace.products.model.Product;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface ProductRepository extends CrudRepository<Product, Integer> {
+import javax.persistence.QueryHint;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+public interface ProductRepository extends CrudRepository<Product, Integer>, ProductProjectionRepository {
 
     Product findProductById(Integer id);
 
     Product findProductByIdAndName(Integer id, String name);
+
+    /**
+     * Keyset page: products with id greater than {@code after}, ordered by id.
+     * Only the page size from {@code pageable} is meant to be used, the offset should stay 0.
+     */
+    List<Product> findByIdGreaterThanOrderByIdAsc(Integer after, Pageable pageable);
+
+    /**
+     * Keyset page of the products modified at or after {@code since} and no later than {@code until}, ordered
+     * by modification time then id, starting after the product {@code after} among those modified exactly
+     * at {@code since}. Served by the (updated_at, id) index.
+     */
+    @Query("select p from Product p where p.updatedAt >= :since and p.updatedAt <= :until " +
+            "and (p.updatedAt > :since or p.id > :after) order by p.updatedAt asc, p.id asc")
+    List<Product> findModifiedSince(@Param("since") Instant since, @Param("after") Integer after,
+                                    @Param("until") Instant until, Pageable pageable);
+
+    /**
+     * Streams the whole catalog off a forward-only JDBC cursor.
+     * Must be consumed inside a transaction and closed afterwards.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    Stream<Product> streamAllByOrderByIdAsc();
+
+    /**
+     * Updates the product only if it is still at {@code version}, bumping the version in the same statement.
+     * @return 1 if the product was updated, 0 if it does not exist or is at another version
+     */
+    @Transactional
+    @Modifying
+    @Query("update Product p set p.name = :name, p.description = :description, p.quantity = :quantity, " +
+            "p.version = p.version + 1, p.updatedAt = :now where p.id = :id and p.version = :version")
+    int updateIfVersionMatches(@Param("id") Integer id,
+                               @Param("version") Integer version,
+                               @Param("name") String name,
+                               @Param("description") String description,
+                               @Param("quantity") Integer quantity,
+                               @Param("now") Instant now);
+
+    /**
+     * Adds {@code delta} to the quantity in place, a missing quantity counts as 0.
+     * @return 1 if the product was updated, 0 if it does not exist
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update Product p set p.quantity = coalesce(p.quantity, 0) + :delta, p.version = p.version + 1, " +
+            "p.updatedAt = :now where p.id = :id")
+    int adjustQuantity(@Param("id") Integer id, @Param("delta") int delta, @Param("now") Instant now);
+
+    /**
+     * Adds {@code delta} to the quantity in place unless the result would be negative.
+     * @return 1 if the product was updated, 0 if it does not exist or has too little stock
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update Product p set p.quantity = coalesce(p.quantity, 0) + :delta, p.version = p.version + 1, " +
+            "p.updatedAt = :now where p.id = :id and coalesce(p.quantity, 0) + :delta >= 0")
+    int adjustQuantityNotBelowZero(@Param("id") Integer id, @Param("delta") int delta, @Param("now") Instant now);
+
+    /**
+     * Sets the quantity if the product is still at {@code version}, bumping the version in the same statement.
+     * @return 1 if the product was updated, 0 if it does not exist or is at another version
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update Product p set p.quantity = :quantity, p.version = p.version + 1, p.updatedAt = :now " +
+            "where p.id = :id and p.version = :version")
+    int writeQuantityIfVersionMatches(@Param("id") Integer id,
+                                      @Param("version") Integer version,
+                                      @Param("quantity") Integer quantity,
+                                      @Param("now") Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Product p where p.id = :id")
+    int deleteProductById(@Param("id") Integer id);
 }
@@ -0,0 +1,294 @@
+package com.marketplace.products.repository;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductBatchResult;
+import com.marketplace.products.model.ProductField;
+import com.marketplace.products.replication.ReplicaRouter;
+import com.marketplace.products.sharding.ShardRouter;
+import com.marketplace.products.snapshot.ProductReplica;
+import com.marketplace.products.snapshot.ProductSnapshot;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs the queries of {@link ProductRepository} where the products are, called the same way whatever the
+ * deployment: reads come from the snapshot of a read-only replica node, from a read replica that caught up,
+ * or from every shard with the results merged in order; writes run on the shard of their product.
+ * <p>
+ * Without sharding there is one shard, the database: work of each shard runs once, on the calling thread
+ * and in the caller's transaction. Sharded, work of several shards runs in a transaction per shard that
+ * commits on its own, a failing shard does not undo the shards before it.
+ */
+@Component
+public class RoutingProductRepository {
+
+    private static final Comparator<Product> BY_ID = Comparator.comparing(Product::getId);
+
+    private static final Comparator<Product> BY_CHANGE = Comparator.comparing(Product::getUpdatedAt)
+            .thenComparing(Product::getId);
+
+    private final ProductRepository productRepository;
+
+    private final EntityManager entityManager;
+
+    private final ShardRouter shardRouter;
+
+    private final ReplicaRouter replicaRouter;
+
+    private final ProductReplica productReplica;
+
+    /**
+     * Transactions of one shard, joining the caller's when there is only one.
+     */
+    private final TransactionTemplate shardTransaction;
+
+    private final TransactionTemplate readOnlyShardTransaction;
+
+    public RoutingProductRepository(ProductRepository productRepository, EntityManager entityManager,
+                                    ShardRouter shardRouter, ReplicaRouter replicaRouter,
+                                    ProductReplica productReplica, PlatformTransactionManager transactionManager) {
+        this.productRepository = productRepository;
+        this.entityManager = entityManager;
+        this.shardRouter = shardRouter;
+        this.replicaRouter = replicaRouter;
+        this.productReplica = productReplica;
+        int propagation = shardRouter.isEnabled()
+                ? TransactionDefinition.PROPAGATION_REQUIRES_NEW : TransactionDefinition.PROPAGATION_REQUIRED;
+        this.shardTransaction = new TransactionTemplate(transactionManager);
+        this.shardTransaction.setPropagationBehavior(propagation);
+        this.readOnlyShardTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyShardTransaction.setPropagationBehavior(propagation);
+        this.readOnlyShardTransaction.setReadOnly(true);
+    }
+
+    /**
+     * @return the product, or null if no product has this id
+     */
+    public Product findById(Integer id) {
+        ProductSnapshot snapshot = productReplica.snapshot();
+        if (snapshot != null) {
+            return snapshot.find(id);
+        }
+        return replicaRouter.read(id, () -> onShardOf(id, () -> productRepository.findProductById(id)));
+    }
+
+    /**
+     * Looks up the products with one IN query per shard, leaving out nulls and unknown ids.
+     * Sharded, the shards are queried in parallel, outside the caller's transaction if there are several.
+     */
+    public Map<Integer, Product> findAllByIdAsMap(Collection<Integer> ids) {
+        Map<Integer, Product> products = new HashMap<>();
+        ProductSnapshot snapshot = productReplica.snapshot();
+        if (snapshot != null) {
+            ids.stream().filter(Objects::nonNull).map(snapshot::find).filter(Objects::nonNull)
+                    .forEach(product -> products.put(product.getId(), product));
+            return products;
+        }
+        Map<Integer, List<Integer>> idsByShard = shardRouter.groupByShard(
+                ids.stream().distinct().collect(Collectors.toList()));
+        shardRouter.onShards(idsByShard.keySet(), shard -> productRepository.findAllById(idsByShard.get(shard)))
+                .values()
+                .forEach(found -> found.forEach(product -> products.put(product.getId(), product)));
+        return products;
+    }
+
+    /**
+     * Up to {@code limit} products with id greater than {@code after}, in id order, selecting only the id,
+     * the version and {@code fields}; all columns are read if {@code fields} is null. Sharded, every shard
+     * reads a full page and the pages are merged.
+     */
+    public List<Product> findPage(int after, int limit, Set<ProductField> fields) {
+        ProductSnapshot snapshot = productReplica.snapshot();
+        if (snapshot != null) {
+            // records hold every field, the response leaves out those not asked for
+            return snapshot.page(after, limit);
+        }
+        return replicaRouter.read(null,
+                () -> merge(shardRouter.onEachShard(shard -> findPageOnShard(after, limit, fields)), BY_ID, limit));
+    }
+
+    /**
+     * Up to {@code limit} products modified at or after {@code since} and no later than {@code until}, oldest
+     * change first; of those modified at {@code since}, only the ones with id greater than {@code after}.
+     */
+    public List<Product> findModifiedSince(Instant since, int after, Instant until, int limit) {
+        return replicaRouter.read(null, () -> merge(shardRouter.onEachShard(shard ->
+                productRepository.findModifiedSince(since, after, until, PageRequest.of(0, limit))),
+                BY_CHANGE, limit));
+    }
+
+    /**
+     * Hands every product to {@code action} in id order while the rows come off the cursor, each entity
+     * detached once consumed. Sharded, every shard is streamed on a thread of its own and the streams merged.
+     */
+    public void streamAll(Consumer<Product> action) {
+        ProductSnapshot snapshot = productReplica.snapshot();
+        if (snapshot != null) {
+            snapshot.forEach(action);
+            return;
+        }
+        shardRouter.forEachMerged(BY_ID,
+                (shard, sink) -> readOnlyShardTransaction.executeWithoutResult(status -> streamShard(sink)),
+                action);
+    }
+
+    /**
+     * Runs {@code action} on the shard of product {@code id}.
+     */
+    public <T> T onShardOf(Integer id, Supplier<T> action) {
+        return shardRouter.onShard(shardRouter.shardOf(id), action);
+    }
+
+    /**
+     * Runs {@code action}, which creates a product, on the shard the next product goes to.
+     */
+    public <T> T onNewShard(Supplier<T> action) {
+        return shardRouter.onShard(shardRouter.nextShard(), () -> {
+            T result = action.get();
+            if (shardRouter.isEnabled()) {
+                // the inserts would wait for the commit, when the shard is no longer bound to pick the connection
+                entityManager.flush();
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Applies {@code batch} to the products created next, the part of each shard in a transaction of that
+     * shard, and puts the results back in the order of {@code products}.
+     */
+    public List<ProductBatchResult> batchOnNewShards(List<Product> products,
+                                                     Function<List<Product>, List<ProductBatchResult>> batch) {
+        return batchOnShards(products, product -> shardRouter.nextShard(), batch);
+    }
+
+    /**
+     * Like {@link #batchOnNewShards}, with the items on the shard of the product {@code idOf} tells;
+     * items without an id go to {@link ShardRouter#HOME}.
+     */
+    public <T> List<ProductBatchResult> batchById(List<T> items, Function<T, Integer> idOf,
+                                                  Function<List<T>, List<ProductBatchResult>> batch) {
+        return batchOnShards(items, item -> shardOfId(idOf.apply(item)), batch);
+    }
+
+    /**
+     * Runs {@code work} on the items of each shard in a transaction of that shard.
+     * @return the sum of what {@code work} returned
+     */
+    public <T> int sumById(List<T> items, Function<T, Integer> idOf, ToIntFunction<List<T>> work) {
+        int sum = 0;
+        for (Map.Entry<Integer, List<T>> part : groupById(items, idOf).entrySet()) {
+            sum += inShardTransaction(part.getKey(), () -> work.applyAsInt(part.getValue()));
+        }
+        return sum;
+    }
+
+    /**
+     * Runs {@code work} on the items of each shard in turn, in a transaction of that shard. When one fails,
+     * {@code undo} gives back the items of the shards before it, again in a transaction of each.
+     */
+    public <T> void allOrNothingById(List<T> items, Function<T, Integer> idOf,
+                                     Consumer<List<T>> work, Consumer<List<T>> undo) {
+        List<Map.Entry<Integer, List<T>>> done = new ArrayList<>();
+        try {
+            for (Map.Entry<Integer, List<T>> part : groupById(items, idOf).entrySet()) {
+                inShardTransaction(part.getKey(), () -> {
+                    work.accept(part.getValue());
+                    return null;
+                });
+                done.add(part);
+            }
+        } catch (RuntimeException e) {
+            for (Map.Entry<Integer, List<T>> part : done) {
+                inShardTransaction(part.getKey(), () -> {
+                    undo.accept(part.getValue());
+                    return null;
+                });
+            }
+            throw e;
+        }
+    }
+
+    private List<Product> findPageOnShard(int after, int limit, Set<ProductField> fields) {
+        if (fields == null || fields.containsAll(EnumSet.allOf(ProductField.class))) {
+            return productRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, limit));
+        }
+        return productRepository.findPageWithFields(after, limit, fields);
+    }
+
+    private void streamShard(Consumer<Product> action) {
+        try (Stream<Product> products = productRepository.streamAllByOrderByIdAsc()) {
+            products.forEach(product -> {
+                action.accept(product);
+                entityManager.detach(product);
+            });
+        }
+    }
+
+    private <T> List<ProductBatchResult> batchOnShards(List<T> items, ToIntFunction<T> shardOf,
+                                                       Function<List<T>, List<ProductBatchResult>> batch) {
+        Map<Integer, List<Integer>> indexesByShard = new TreeMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            indexesByShard.computeIfAbsent(shardOf.applyAsInt(items.get(i)), shard -> new ArrayList<>()).add(i);
+        }
+        ProductBatchResult[] results = new ProductBatchResult[items.size()];
+        indexesByShard.forEach((shard, indexes) -> {
+            List<T> part = indexes.stream().map(items::get).collect(Collectors.toList());
+            for (ProductBatchResult result : inShardTransaction(shard, () -> batch.apply(part))) {
+                int index = indexes.get(result.getIndex());
+                results[index] = new ProductBatchResult(result.getOperation(), index, result.getId(),
+                        result.getVersion(), result.getStatus());
+            }
+        });
+        return Arrays.asList(results);
+    }
+
+    private <T> Map<Integer, List<T>> groupById(List<T> items, Function<T, Integer> idOf) {
+        return items.stream().collect(Collectors.groupingBy(item -> shardOfId(idOf.apply(item)), TreeMap::new,
+                Collectors.toList()));
+    }
+
+    private int shardOfId(Integer id) {
+        return id == null ? ShardRouter.HOME : shardRouter.shardOf(id);
+    }
+
+    private <T> T inShardTransaction(int shard, Supplier<T> work) {
+        return shardRouter.onShard(shard, () -> shardTransaction.execute(status -> work.get()));
+    }
+
+    /**
+     * The first {@code limit} products of the sorted lists of each shard, in {@code order}.
+     */
+    private static List<Product> merge(List<List<Product>> shards, Comparator<Product> order, int limit) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        List<Product> merged = new ArrayList<>();
+        shards.forEach(merged::addAll);
+        merged.sort(order);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+}
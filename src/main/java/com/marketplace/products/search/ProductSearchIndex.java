@@ -0,0 +1,277 @@
+package com.marketplace.products.search;
+
+import com.marketplace.products.model.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-process inverted index over product name and description.
+ * Terms are kept in a sorted map so the last query term can be matched as a prefix (autocomplete).
+ * Every query term has to match; results are ranked by where the terms matched, name before description.
+ * Writes are serialized, reads are lock-free and may briefly see a product half way through re-indexing.
+ * Documents are tagged with the product version: an older version never replaces a newer one, and removed
+ * ids are kept as tombstones for {@link #TOMBSTONE_TTL} so a late write or the startup build cannot bring
+ * them back.
+ */
+@Component
+public class ProductSearchIndex {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private static final int NAME_EXACT_SCORE = 4;
+    private static final int NAME_PREFIX_SCORE = 3;
+    private static final int DESCRIPTION_EXACT_SCORE = 2;
+    private static final int DESCRIPTION_PREFIX_SCORE = 1;
+
+    static final Duration TOMBSTONE_TTL = Duration.ofSeconds(60);
+
+    private final ConcurrentSkipListMap<String, Set<Integer>> postings = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Integer, Document> documents = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> tombstones = new HashMap<>();
+    private final Deque<Tombstone> tombstonesByAge = new ArrayDeque<>();
+    private final boolean enabled;
+
+    public ProductSearchIndex(@Value("${products.search.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds the product or replaces what was indexed for its id, unless a newer version is indexed
+     * or the product was removed.
+     */
+    public synchronized void index(Product product) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        pruneTombstones(now);
+        if (tombstones.containsKey(product.getId())) {
+            return;
+        }
+        Document document = new Document(product);
+        Document current = documents.get(product.getId());
+        if (current != null && current.version > document.version) {
+            return;
+        }
+        Document previous = documents.put(product.getId(), document);
+        if (previous != null) {
+            for (String term : previous.terms()) {
+                if (!document.nameTerms.contains(term) && !document.descriptionTerms.contains(term)) {
+                    removePosting(term, product.getId());
+                }
+            }
+        }
+        for (String term : document.terms()) {
+            postings.computeIfAbsent(term, key -> ConcurrentHashMap.newKeySet()).add(product.getId());
+        }
+    }
+
+    /**
+     * Drops the product and leaves a tombstone behind for {@link #TOMBSTONE_TTL}.
+     */
+    public synchronized void remove(Integer id) {
+        long now = System.nanoTime();
+        pruneTombstones(now);
+        if (tombstones.put(id, now) == null) {
+            tombstonesByAge.addLast(new Tombstone(id, now));
+        }
+        Document previous = documents.remove(id);
+        if (previous != null) {
+            for (String term : previous.terms()) {
+                removePosting(term, id);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        documents.clear();
+        postings.clear();
+        tombstones.clear();
+        tombstonesByAge.clear();
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    /**
+     * Finds the products matching every term of {@code query}, the last one as a prefix.
+     * @return copies of the indexed products, best match first, then by id
+     */
+    public List<Product> search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Set<Integer> candidates = null;
+        for (int i = 0; i < terms.size(); i++) {
+            boolean prefix = i == terms.size() - 1;
+            Set<Integer> matches = matching(terms.get(i), prefix);
+            if (candidates == null) {
+                candidates = matches;
+            } else {
+                candidates.retainAll(matches);
+            }
+            if (candidates.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        Map<Integer, Integer> scores = new HashMap<>();
+        List<Document> hits = new ArrayList<>(candidates.size());
+        for (Integer id : candidates) {
+            Document document = documents.get(id);
+            if (document != null) {
+                hits.add(document);
+                scores.put(id, document.score(terms));
+            }
+        }
+        hits.sort(Comparator.<Document>comparingInt(document -> scores.get(document.product.getId())).reversed()
+                .thenComparing(document -> document.product.getId()));
+
+        List<Product> results = new ArrayList<>(Math.min(limit, hits.size()));
+        for (int i = 0; i < hits.size() && i < limit; i++) {
+            results.add(new Product(hits.get(i).product));
+        }
+        return results;
+    }
+
+    private Set<Integer> matching(String term, boolean prefix) {
+        Set<Integer> ids = new HashSet<>();
+        if (prefix) {
+            for (Set<Integer> posting : withPrefix(term).values()) {
+                ids.addAll(posting);
+            }
+        } else {
+            Set<Integer> posting = postings.get(term);
+            if (posting != null) {
+                ids.addAll(posting);
+            }
+        }
+        return ids;
+    }
+
+    private NavigableMap<String, Set<Integer>> withPrefix(String prefix) {
+        return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private void pruneTombstones(long now) {
+        long ttl = TOMBSTONE_TTL.toNanos();
+        while (!tombstonesByAge.isEmpty() && now - tombstonesByAge.peekFirst().removedAt > ttl) {
+            Tombstone tombstone = tombstonesByAge.removeFirst();
+            tombstones.remove(tombstone.id, tombstone.removedAt);
+        }
+    }
+
+    private void removePosting(String term, Integer id) {
+        Set<Integer> posting = postings.get(term);
+        if (posting != null) {
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(term, posting);
+            }
+        }
+    }
+
+    /**
+     * Lower case, accents stripped, split on anything that is not a letter or a digit.
+     * The stroke of ł is not a combining mark, it is folded by hand.
+     */
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        String normalized = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+                .replaceAll("")
+                .toLowerCase(Locale.ROOT)
+                .replace('ł', 'l');
+        List<String> terms = new ArrayList<>();
+        for (String term : SEPARATORS.split(normalized)) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private static final class Tombstone {
+
+        private final Integer id;
+        private final long removedAt;
+
+        private Tombstone(Integer id, long removedAt) {
+            this.id = id;
+            this.removedAt = removedAt;
+        }
+    }
+
+    private static final class Document {
+
+        private final Product product;
+        private final int version;
+        private final Set<String> nameTerms;
+        private final Set<String> descriptionTerms;
+
+        private Document(Product product) {
+            this.product = new Product(product);
+            this.version = product.getVersion() == null ? 0 : product.getVersion();
+            this.nameTerms = new HashSet<>(tokenize(product.getName()));
+            this.descriptionTerms = new HashSet<>(tokenize(product.getDescription()));
+        }
+
+        private Collection<String> terms() {
+            Set<String> terms = new HashSet<>(nameTerms);
+            terms.addAll(descriptionTerms);
+            return terms;
+        }
+
+        private int score(List<String> queryTerms) {
+            int score = 0;
+            for (String term : queryTerms) {
+                if (nameTerms.contains(term)) {
+                    score += NAME_EXACT_SCORE;
+                } else if (startsWith(nameTerms, term)) {
+                    score += NAME_PREFIX_SCORE;
+                } else if (descriptionTerms.contains(term)) {
+                    score += DESCRIPTION_EXACT_SCORE;
+                } else if (startsWith(descriptionTerms, term)) {
+                    score += DESCRIPTION_PREFIX_SCORE;
+                }
+            }
+            return score;
+        }
+
+        private static boolean startsWith(Set<String> terms, String prefix) {
+            for (String term : terms) {
+                if (term.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.marketplace.products.service;
+
+/**
+ * Thrown when a stock adjustment would take the quantity of a product below zero.
+ */
+public class InsufficientStockException extends RuntimeException {
+
+    private final Integer productId;
+
+    public InsufficientStockException(Integer productId) {
+        super("Insufficient stock for product with id " + productId);
+        this.productId = productId;
+    }
+
+    public Integer getProductId() {
+        return productId;
+    }
+}
@@ -0,0 +1,168 @@
+package com.marketplace.products.service;
+
+import com.marketplace.products.model.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-process cache of products keyed by id.
+ * Entries are tagged with the product version: a read never replaces an entry
+ * installed by a write, and a write never replaces a newer one. Deleted ids are
+ * kept as tombstones for one TTL so a slow concurrent read cannot bring them back.
+ * Products are copied in and out, callers are free to mutate what they get.
+ */
+@Component
+public class ProductCache {
+
+    private static final int TOMBSTONE_VERSION = Integer.MAX_VALUE;
+
+    private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ProductCache(@Value("${products.cache.max-size:10000}") int maxSize,
+                        @Value("${products.cache.ttl:60s}") Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Returns a copy of the cached product or null on a miss.
+     */
+    public Product get(Integer id) {
+        Entry entry = entries.get(id);
+        if (entry == null || entry.product == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(id, entry);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new Product(entry.product);
+    }
+
+    /**
+     * Populates the cache with a product just read from the database.
+     * Any live entry is kept since it is at least as fresh as this read.
+     */
+    public void cache(Product product) {
+        if (!isEnabled()) {
+            return;
+        }
+        long now = System.nanoTime();
+        Entry fresh = new Entry(product, now + ttlNanos);
+        entries.compute(product.getId(), (id, existing) ->
+                existing == null || existing.isExpired(now) || existing.version < fresh.version ? fresh : existing);
+        evictIfFull();
+    }
+
+    /**
+     * Installs the product as written to the database unless a newer version is already cached.
+     * A product written without a read does not know its creation time, it is kept from the cached one.
+     */
+    public void update(Product product) {
+        if (!isEnabled()) {
+            return;
+        }
+        long now = System.nanoTime();
+        entries.compute(product.getId(), (id, existing) -> {
+            boolean live = existing != null && !existing.isExpired(now);
+            if (live && existing.version > versionOf(product)) {
+                return existing;
+            }
+            Entry fresh = new Entry(product, now + ttlNanos);
+            if (live && existing.product != null && fresh.product.getCreatedAt() == null) {
+                fresh.product.setCreatedAt(existing.product.getCreatedAt());
+            }
+            return fresh;
+        });
+        evictIfFull();
+    }
+
+    /**
+     * Drops the product and leaves a tombstone behind for one TTL.
+     */
+    public void evict(Integer id) {
+        if (!isEnabled()) {
+            return;
+        }
+        entries.put(id, new Entry(null, System.nanoTime() + ttlNanos));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Approximate bound: drops entries in hash iteration order until back under the size limit.
+     * Cheaper than keeping an LRU order up to date on every read.
+     */
+    private void evictIfFull() {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private static int versionOf(Product product) {
+        return product.getVersion() == null ? 0 : product.getVersion();
+    }
+
+    private static final class Entry {
+
+        private final Product product;
+        private final int version;
+        private final long expiresAt;
+
+        private Entry(Product product, long expiresAt) {
+            this.product = product == null ? null : new Product(product);
+            this.version = product == null ? TOMBSTONE_VERSION : versionOf(product);
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.marketplace.products.service;
+
+import com.marketplace.products.model.ProductChange;
+import com.marketplace.products.model.ProductChangePage;
+import com.marketplace.products.replication.ReplicaRouter;
+import com.marketplace.products.repository.ProductChangeRepository;
+import com.marketplace.products.sharding.ShardRouter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Transactional outbox of product changes and the ordered feed read from it.
+ * <p>
+ * Changes are inserted in the transaction that makes them, so the log holds exactly the committed changes.
+ * Ids come from a sequence when the change is appended, but transactions commit in any order: a reader
+ * that went past an id still in flight would never see it. The feed therefore stops below the lowest id
+ * appended by a transaction that has not completed yet. Only the transactions of this instance are known,
+ * so a single instance may append: it holds the {@link ProductChangeWriterLease}, appends without it fail.
+ * <p>
+ * Sharded, each change is kept on the shard of its product while the ids of all shards come from one
+ * sequence, so the feed merges the logs of the shards by id.
+ * <p>
+ * Subscribers are told, on a single background thread, whenever a transaction that appended changes completes.
+ */
+@Component
+public class ProductChangeFeed {
+
+    private static final Logger LOGGER = LogManager.getLogger(ProductChangeFeed.class);
+
+    private final ProductChangeRepository productChangeRepository;
+    private final ShardRouter shardRouter;
+    private final ReplicaRouter replicaRouter;
+    private final ProductChangeWriterLease writerLease;
+
+    private final Object appendLock = new Object();
+    private final ConcurrentSkipListSet<Long> uncommittedIds = new ConcurrentSkipListSet<>();
+
+    private final List<Runnable> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean notificationPending = new AtomicBoolean();
+    private final ExecutorService notifier = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-changes");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ProductChangeFeed(ProductChangeRepository productChangeRepository, ShardRouter shardRouter,
+                             ReplicaRouter replicaRouter, ProductChangeWriterLease writerLease) {
+        this.productChangeRepository = productChangeRepository;
+        this.shardRouter = shardRouter;
+        this.replicaRouter = replicaRouter;
+        this.writerLease = writerLease;
+    }
+
+    public void append(ProductChange change) {
+        appendAll(Collections.singletonList(change));
+    }
+
+    /**
+     * Inserts the changes in the current transaction, they become visible in the feed once it commits.
+     * Reads of the changed products stay on the primary until the replicas have them.
+     * @throws IllegalStateException outside of a transaction, or without the writer lease
+     */
+    public void appendAll(List<ProductChange> changes) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Product changes must be appended in the transaction of the change");
+        }
+        if (!writerLease.isHeld()) {
+            throw new IllegalStateException("This instance does not hold the product change writer lease");
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(changes.size());
+        // ids are assigned on persist, in increasing order while the lock is held
+        synchronized (appendLock) {
+            for (ProductChange change : productChangeRepository.saveAll(changes)) {
+                ids.add(change.getId());
+                uncommittedIds.add(change.getId());
+            }
+        }
+        // replicas lag behind the commit, but reads during the commit must not go to them either
+        List<Integer> productIds = changes.stream().map(ProductChange::getProductId).collect(Collectors.toList());
+        replicaRouter.written(productIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                replicaRouter.written(productIds);
+                uncommittedIds.removeAll(ids);
+                notifySubscribers();
+            }
+        });
+    }
+
+    /**
+     * Committed changes after {@code after} in log order, at most {@code limit} of them.
+     */
+    public ProductChangePage changesAfter(long after, int limit) {
+        long horizon = horizon();
+        List<ProductChange> changes = new ArrayList<>();
+        shardRouter.onEachShard(shard -> productChangeRepository.findByIdGreaterThanAndIdLessThanOrderByIdAsc(
+                after, horizon, PageRequest.of(0, limit))).forEach(changes::addAll);
+        if (shardRouter.isEnabled()) {
+            changes.sort(Comparator.comparing(ProductChange::getId));
+            changes = changes.subList(0, Math.min(limit, changes.size()));
+        }
+        return new ProductChangePage(changes, changes.isEmpty() ? after : changes.get(changes.size() - 1).getId());
+    }
+
+    /**
+     * Cursor of the last change readers can see now, 0 for an empty log.
+     */
+    public long head() {
+        long horizon = horizon();
+        long head = 0;
+        for (ProductChange last : shardRouter.onEachShard(
+                shard -> productChangeRepository.findTopByIdLessThanOrderByIdDesc(horizon))) {
+            if (last != null) {
+                head = Math.max(head, last.getId());
+            }
+        }
+        return head;
+    }
+
+    /**
+     * Runs {@code subscriber} on the feed thread after transactions that appended changes completed.
+     * Notifications are coalesced, the subscriber has to read the feed to find out what changed.
+     * @return the action that cancels the subscription
+     */
+    public Runnable subscribe(Runnable subscriber) {
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    @PreDestroy
+    public void close() {
+        notifier.shutdownNow();
+    }
+
+    private long horizon() {
+        synchronized (appendLock) {
+            return uncommittedIds.isEmpty() ? Long.MAX_VALUE : uncommittedIds.first();
+        }
+    }
+
+    private void notifySubscribers() {
+        if (subscribers.isEmpty() || !notificationPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            notifier.execute(() -> {
+                notificationPending.set(false);
+                for (Runnable subscriber : subscribers) {
+                    try {
+                        subscriber.run();
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("Product change subscriber failed", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Not notifying product change subscribers, shutting down");
+        }
+    }
+}
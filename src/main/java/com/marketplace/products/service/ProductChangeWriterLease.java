@@ -0,0 +1,113 @@
+package com.marketplace.products.service;
+
+import com.marketplace.products.snapshot.ProductReplica;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes this instance the only one appending to the product change log, which the order of the feed
+ * relies on: change ids come from sequence blocks each instance allocates on its own, so the feed cannot
+ * tell whether a lower id of another instance is still to commit.
+ * <p>
+ * The lease is the row of {@code product_change_writer} on the home database. It is claimed at startup,
+ * which fails while another instance renewed it within {@code products.changes.writer-lease.timeout}
+ * milliseconds, and renewed every {@code products.changes.writer-lease.renew-interval}. Once lost, e.g. after
+ * a pause longer than the timeout, changes cannot be appended until a renewal claims it back. Replicas
+ * serving a snapshot write nothing and take no lease.
+ */
+@Component
+public class ProductChangeWriterLease {
+
+    private static final Logger LOGGER = LogManager.getLogger(ProductChangeWriterLease.class);
+
+    private static final String INSTANCE = UUID.randomUUID().toString();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean replica;
+    private final long timeout;
+    private final long renewInterval;
+
+    private volatile boolean held;
+
+    private final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-change-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ProductChangeWriterLease(JdbcTemplate jdbcTemplate, ProductReplica productReplica,
+                                    @Value("${products.changes.writer-lease.timeout:30000}") long timeout,
+                                    @Value("${products.changes.writer-lease.renew-interval:10000}")
+                                            long renewInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.replica = productReplica.isEnabled();
+        this.timeout = timeout;
+        this.renewInterval = renewInterval;
+    }
+
+    /**
+     * @throws IllegalStateException if another instance holds the lease
+     */
+    @PostConstruct
+    public void start() {
+        if (replica) {
+            return;
+        }
+        if (!renew()) {
+            throw new IllegalStateException("Another instance appends to the product change log, "
+                    + "a second writer would break the order of the feed");
+        }
+        renewer.scheduleWithFixedDelay(this::renewQuietly, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isHeld() {
+        return held;
+    }
+
+    @PreDestroy
+    public void close() {
+        renewer.shutdownNow();
+        if (held) {
+            held = false;
+            jdbcTemplate.update("update product_change_writer set instance = null, renewed_at = null "
+                    + "where id = 1 and instance = ?", INSTANCE);
+        }
+    }
+
+    /**
+     * Claims or keeps the lease if this instance holds it or nobody renewed it within the timeout.
+     */
+    private boolean renew() {
+        Instant now = Instant.now();
+        held = jdbcTemplate.update("update product_change_writer set instance = ?, renewed_at = ? "
+                        + "where id = 1 and (instance = ? or instance is null or renewed_at < ?)",
+                INSTANCE, Timestamp.from(now), INSTANCE, Timestamp.from(now.minusMillis(timeout))) == 1;
+        return held;
+    }
+
+    private void renewQuietly() {
+        boolean wasHeld = held;
+        try {
+            renew();
+        } catch (RuntimeException e) {
+            // without a renewal the lease may pass to another instance, stop appending meanwhile
+            held = false;
+            LOGGER.error("Renewing the product change writer lease failed", e);
+        }
+        if (wasHeld && !held) {
+            LOGGER.error("Lost the product change writer lease, changes are refused until it is claimed back");
+        }
+    }
+}
@@ -1,60 +1,745 @@
 package com.marketplace.products.service;
 
+import com.marketplace.products.inventory.InventoryStatistics;
+import com.marketplace.products.inventory.InventoryStore;
+import com.marketplace.products.inventory.InventoryStore.PendingWrite;
+import com.marketplace.products.metrics.ProductMetrics;
+import com.marketplace.products.model.InventoryStats;
 import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductBatchRequest;
+import com.marketplace.products.model.ProductBatchResult;
+import com.marketplace.products.model.ProductBatchResult.Operation;
+import com.marketplace.products.model.ProductBatchResult.Status;
+import com.marketplace.products.model.ProductChange;
+import com.marketplace.products.model.ProductChange.Type;
+import com.marketplace.products.model.ProductField;
+import com.marketplace.products.model.ProductLookupResult;
+import com.marketplace.products.model.ProductPage;
+import com.marketplace.products.model.StockLevel;
+import com.marketplace.products.model.StockReservation;
 import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.repository.RoutingProductRepository;
+import com.marketplace.products.search.ProductSearchIndex;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class ProductService {
 
     private static final Logger LOGGER = LogManager.getLogger(ProductService.class);
 
+    /**
+     * Rows flushed per chunk of a batch, a multiple of hibernate.jdbc.batch_size.
+     */
+    static final int BATCH_CHUNK_SIZE = 500;
+
     private final ProductRepository productRepository;
 
+    private final RoutingProductRepository routingProductRepository;
+
+    private final EntityManager entityManager;
+
+    private final ProductCache productCache;
+
+    private final ProductMetrics productMetrics;
+
+    private final ProductSearchIndex productSearchIndex;
+
+    private final ProductChangeFeed productChangeFeed;
+
+    private final InventoryStore inventoryStore;
+
+    private final InventoryStatistics inventoryStatistics;
+
+    /**
+     * Database lookups by id in flight, shared by concurrent lookups of the same product.
+     */
+    private final SingleFlight<Integer, Product> lookups = new SingleFlight<>();
+
+    /**
+     * How long rows stay out of modifiedSince pages after their modification time, see {@link #findModifiedSince}.
+     */
+    private final Duration commitLag;
+
     @Autowired
-    public ProductService(ProductRepository productRepository) {
+    public ProductService(ProductRepository productRepository, RoutingProductRepository routingProductRepository,
+                          EntityManager entityManager, ProductCache productCache, ProductMetrics productMetrics,
+                          ProductSearchIndex productSearchIndex, ProductChangeFeed productChangeFeed,
+                          InventoryStore inventoryStore, InventoryStatistics inventoryStatistics,
+                          @Value("${products.modified-since.commit-lag:5000}") long commitLag) {
         this.productRepository = productRepository;
+        this.routingProductRepository = routingProductRepository;
+        this.entityManager = entityManager;
+        this.productCache = productCache;
+        this.productMetrics = productMetrics;
+        this.productSearchIndex = productSearchIndex;
+        this.productChangeFeed = productChangeFeed;
+        this.inventoryStore = inventoryStore;
+        this.inventoryStatistics = inventoryStatistics;
+        this.commitLag = Duration.ofMillis(commitLag);
     }
 
+    /**
+     * Fills the search index from the database once the application is up.
+     * Searches before it completes see only part of the catalog.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void buildSearchIndex() {
+        if (productSearchIndex.isEnabled()) {
+            streamAll(productSearchIndex::index);
+            LOGGER.info("Search index built with {} products", productSearchIndex.size());
+        }
+    }
+
+    /**
+     * Ranked full-text search over name and description, answered from memory.
+     */
+    public List<Product> search(String query, int limit) {
+        return productSearchIndex.search(query, limit);
+    }
+
+    /**
+     * Stock figures of the whole catalog, maintained with every committed write.
+     * @param lowStockLimit the most products of the lowest stock to list
+     * @return the figures, or null if the statistics are disabled
+     */
+    public InventoryStats inventoryStats(int lowStockLimit) {
+        return inventoryStatistics.isEnabled() ? inventoryStatistics.stats(lowStockLimit) : null;
+    }
+
+    @Transactional
     public Product save(Product product) {
-        LOGGER.info("Saving new Product with name: {}", product.getName());
-        product.setVersion(1);
-        return productRepository.save(product);
+        LOGGER.debug("Saving new Product with name: {}", product.getName());
+        return routingProductRepository.onNewShard(() -> {
+            // an id carried in would have the save merge into, and overwrite, the product of that id
+            product.setId(null);
+            product.setVersion(1);
+            Product savedProduct = productRepository.save(product);
+            productChangeFeed.append(new ProductChange(Type.CREATED, savedProduct));
+            refreshAfterCommit(savedProduct);
+            return savedProduct;
+        });
     }
 
+    /**
+     * Updates the product if it is still at the version carried by {@code product},
+     * with a single conditional UPDATE statement.
+     * @return the product at its new version, or null if no product has this id
+     * @throws ObjectOptimisticLockingFailureException if the product is at another version
+     */
+    @Transactional
     public Product update(Product product) {
-        LOGGER.info("Updating product with id:{}", product.getId());
-        Product existingProduct = productRepository.findProductById(product.getId());
-        if (existingProduct != null) {
-            existingProduct.setName(product.getName());
-            existingProduct.setDescription(product.getDescription());
-            existingProduct.setQuantity(product.getQuantity());
-            existingProduct = productRepository.save(existingProduct);
-        } else {
-            LOGGER.error("Product with id {} could not be updated! ", product.getId());
+        LOGGER.debug("Updating product with id:{}", product.getId());
+        return routingProductRepository.onShardOf(product.getId(), () -> updateOnShard(product));
+    }
+
+    /**
+     * Updates the product whatever version it is at, for If-Match: *.
+     * @return the product at its new version, or null if no product has this id
+     * @throws ObjectOptimisticLockingFailureException if it changed between reading its version and the update
+     */
+    @Transactional
+    public Product updateAnyVersion(Product product) {
+        LOGGER.debug("Updating product with id:{} at any version", product.getId());
+        return routingProductRepository.onShardOf(product.getId(), () -> {
+            Product current = productRepository.findProductById(product.getId());
+            if (current == null) {
+                return null;
+            }
+            product.setVersion(current.getVersion());
+            return updateOnShard(product);
+        });
+    }
+
+    private Product updateOnShard(Product product) {
+        Instant now = Product.timestamp();
+        int updated = productRepository.updateIfVersionMatches(product.getId(), product.getVersion(),
+                product.getName(), product.getDescription(), product.getQuantity(), now);
+        if (updated == 0) {
+            if (!productRepository.existsById(product.getId())) {
+                LOGGER.error("Product with id {} could not be updated! ", product.getId());
+                return null;
+            }
+            productMetrics.versionConflict();
+            throw new ObjectOptimisticLockingFailureException(Product.class, product.getId());
+        }
+        Product updatedProduct = new Product(product.getId(), product.getName(), product.getDescription(),
+                product.getQuantity(), product.getVersion() + 1);
+        updatedProduct.setUpdatedAt(now);
+        productChangeFeed.append(new ProductChange(Type.UPDATED, updatedProduct));
+        refreshAfterCommit(updatedProduct);
+        return updatedProduct;
+    }
+
+    /**
+     * Changes the stock of a product by {@code delta} with one atomic UPDATE, without a version check.
+     * A product held by the inventory store is changed there and written through with its reservations.
+     * @return the product with its new quantity and version, or null if no product has this id
+     * @throws InsufficientStockException if {@code floorAtZero} is set and the stock would go negative
+     */
+    @Transactional
+    public Product adjustQuantity(Integer id, int delta, boolean floorAtZero) {
+        return routingProductRepository.onShardOf(id, () -> adjustQuantityOnShard(id, delta, floorAtZero));
+    }
+
+    private Product adjustQuantityOnShard(Integer id, int delta, boolean floorAtZero) {
+        if (inventoryStore.isEnabled()) {
+            lockInventory();
+            if (adjustInventory(id, delta, floorAtZero) != InventoryStore.NOT_HELD) {
+                PendingWrite write = inventoryStore.pendingWrite(id);
+                if (write == null) {
+                    return productRepository.findProductById(id);
+                }
+                List<Product> written = writeInventory(Collections.singletonList(write));
+                if (!written.isEmpty()) {
+                    return written.get(0);
+                }
+                // written meanwhile by someone else, whose rebase waits for the lock: go through the database
+                inventoryStore.adjust(id, -delta, false);
+            }
+        }
+        int updated = floorAtZero
+                ? productRepository.adjustQuantityNotBelowZero(id, delta, Product.timestamp())
+                : productRepository.adjustQuantity(id, delta, Product.timestamp());
+        if (updated == 0) {
+            if (!productRepository.existsById(id)) {
+                return null;
+            }
+            productMetrics.insufficientStock();
+            throw new InsufficientStockException(id);
+        }
+        Product product = productRepository.findProductById(id);
+        if (product != null) {
+            productChangeFeed.append(new ProductChange(Type.UPDATED, product));
+            refreshAfterCommit(product);
+        }
+        return product;
+    }
+
+    /**
+     * Takes stock for all reservations or none of them. Taken from the inventory store without a transaction
+     * if it holds every product, the database gets them with the next flush; otherwise in one transaction,
+     * with rows locked in ascending id order so two overlapping reservations cannot deadlock.
+     * Sharded, in one transaction per shard, a refusal gives back what the shards before it took.
+     * @throws InsufficientStockException for the first product without enough stock,
+     *         or that does not exist; nothing is reserved then
+     */
+    public void reserve(List<StockReservation> reservations) {
+        try {
+            if (inventoryStore.reserve(reservations)) {
+                return;
+            }
+        } catch (InsufficientStockException e) {
+            productMetrics.insufficientStock();
+            throw e;
+        }
+        routingProductRepository.allOrNothingById(reservations, StockReservation::getId, this::reserveInDatabase,
+                reserved -> reserveInDatabase(reserved.stream()
+                        .map(reservation -> new StockReservation(reservation.getId(), -reservation.getQuantity()))
+                        .collect(Collectors.toList())));
+    }
+
+    private void reserveInDatabase(List<StockReservation> reservations) {
+        Map<Integer, Integer> quantitiesById = new TreeMap<>();
+        for (StockReservation reservation : reservations) {
+            quantitiesById.merge(reservation.getId(), reservation.getQuantity(), Integer::sum);
+        }
+        Instant now = Product.timestamp();
+        for (Map.Entry<Integer, Integer> entry : quantitiesById.entrySet()) {
+            if (productRepository.adjustQuantityNotBelowZero(entry.getKey(), -entry.getValue(), now) == 0) {
+                productMetrics.insufficientStock();
+                throw new InsufficientStockException(entry.getKey());
+            }
+        }
+        List<ProductChange> changes = new ArrayList<>(quantitiesById.size());
+        for (Product product : productRepository.findAllById(quantitiesById.keySet())) {
+            changes.add(new ProductChange(Type.UPDATED, product));
+            refreshAfterCommit(product);
         }
-        return existingProduct;
+        productChangeFeed.appendAll(changes);
+    }
+
+    /**
+     * Current stock of a product, from the inventory store when it holds the product.
+     * @return the stock, or null if no product has this id
+     */
+    public StockLevel findStock(Integer id) {
+        int quantity = inventoryStore.quantity(id);
+        if (quantity != InventoryStore.NOT_HELD) {
+            return new StockLevel(id, quantity);
+        }
+        Product product = findById(id);
+        if (product == null) {
+            return null;
+        }
+        return new StockLevel(id, product.getQuantity() == null ? 0 : product.getQuantity());
+    }
+
+    /**
+     * Writes the stock of every product the inventory store took reservations for since its last write,
+     * in one transaction. A row is only written if it is still at the version the store knows; a product
+     * written meanwhile rebases the store once committed and is picked up by the next flush.
+     * @return the number of products written
+     */
+    @Transactional
+    public int flushInventory() {
+        if (!inventoryStore.isEnabled()) {
+            return 0;
+        }
+        lockInventory();
+        return routingProductRepository.sumById(inventoryStore.pendingWrites(), PendingWrite::getId,
+                this::writeInventoryChunks);
+    }
+
+    private int writeInventoryChunks(List<PendingWrite> writes) {
+        int written = 0;
+        for (int from = 0; from < writes.size(); from += BATCH_CHUNK_SIZE) {
+            written += writeInventory(writes.subList(from, Math.min(from + BATCH_CHUNK_SIZE, writes.size()))).size();
+        }
+        return written;
     }
 
     public Product findById(Integer id) {
-        LOGGER.info("Finding product by id:{}", id);
-        return productRepository.findProductById(id);
+        LOGGER.debug("Finding product by id:{}", id);
+        Product cachedProduct = productCache.get(id);
+        if (cachedProduct != null) {
+            return cachedProduct;
+        }
+        return lookups.execute(id, () -> {
+            Product product = routingProductRepository.findById(id);
+            if (product != null) {
+                productCache.cache(product);
+            }
+            return product;
+        }, Product::new);
+    }
+
+    /**
+     * Looks up many products at once: cache hits first, the rest with one IN query per chunk.
+     * @return one result per requested id, in request order, with a missing marker for unknown ids
+     */
+    public List<ProductLookupResult> findAllById(List<Integer> ids) {
+        Map<Integer, Product> products = new HashMap<>();
+        List<Integer> uncachedIds = new ArrayList<>();
+        for (Integer id : ids) {
+            if (!products.containsKey(id)) {
+                Product cachedProduct = productCache.get(id);
+                products.put(id, cachedProduct);
+                if (cachedProduct == null) {
+                    uncachedIds.add(id);
+                }
+            }
+        }
+        for (int from = 0; from < uncachedIds.size(); from += BATCH_CHUNK_SIZE) {
+            List<Integer> chunk = uncachedIds.subList(from, Math.min(from + BATCH_CHUNK_SIZE, uncachedIds.size()));
+            routingProductRepository.findAllByIdAsMap(chunk).values().forEach(product -> {
+                productCache.cache(product);
+                products.put(product.getId(), product);
+            });
+        }
+        productMetrics.lookupServed(ids.size());
+
+        List<ProductLookupResult> results = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            Product product = products.get(id);
+            results.add(product == null ? ProductLookupResult.missing(id) : ProductLookupResult.found(product));
+        }
+        return results;
     }
 
+    @Transactional
     public void delete(Integer id) {
-        LOGGER.info("Deleteing product with id: {}", id);
-        Product existingProduct = productRepository.findProductById(id);
-        if (existingProduct != null) {
-            productRepository.delete(existingProduct);
-        } else {
-            LOGGER.error("Product with id {} could not be found!", id);
+        LOGGER.debug("Deleteing product with id: {}", id);
+        boolean deleted = routingProductRepository.onShardOf(id, () -> {
+            if (productRepository.deleteProductById(id) == 0) {
+                LOGGER.error("Product with id {} could not be found!", id);
+                return false;
+            }
+            productChangeFeed.append(ProductChange.deleted(id));
+            return true;
+        });
+        if (deleted) {
+            removeAfterCommit(Collections.singletonList(id));
+        }
+    }
+
+    /**
+     * Every product in id order, collected from {@link #streamAll}. Prefer pages or the stream for a catalog
+     * of any size.
+     */
+    public List<Product> findAll() {
+        List<Product> products = new ArrayList<>();
+        streamAll(products::add);
+        return products;
+    }
+
+    /**
+     * Returns up to {@code limit} products with id greater than {@code after}.
+     * One extra row is fetched to find out whether a next page exists.
+     */
+    public ProductPage findPage(Integer after, int limit) {
+        return findPage(after, limit, null);
+    }
+
+    /**
+     * Like {@link #findPage(Integer, int)}, selecting only the id, the version and {@code fields}
+     * from the database; all columns are read if {@code fields} is null.
+     */
+    public ProductPage findPage(Integer after, int limit, Set<ProductField> fields) {
+        int from = after == null ? 0 : after;
+        List<Product> items = routingProductRepository.findPage(from, limit + 1, fields);
+        Integer next = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            next = items.get(limit - 1).getId();
+        }
+        productMetrics.pageServed(items.size());
+        return new ProductPage(items, next);
+    }
+
+    /**
+     * Returns up to {@code limit} products modified at or after {@code since}, oldest change first.
+     * The page carries both parts of the cursor to the next one: {@code nextModifiedSince} and {@code next},
+     * to pass as {@code modifiedSince} and {@code after}. A page shorter than {@code limit} is the last one
+     * for now; its cursor is where the pages reached, so polling from it later returns only what changed since.
+     * <p>
+     * The modification time is taken from the clock of the writer before its transaction commits, a row
+     * may become visible with a time older than rows already handed out. Rows modified within the last
+     * {@code products.modified-since.commit-lag} milliseconds are held back until they are older, the lag has
+     * to exceed the longest write transaction plus the clock skew between the nodes.
+     */
+    public ProductPage findModifiedSince(Instant since, Integer after, int limit) {
+        int from = after == null ? 0 : after;
+        Instant until = Product.timestamp().minus(commitLag);
+        List<Product> items = routingProductRepository.findModifiedSince(since, from, until, limit + 1);
+        if (items.size() <= limit) {
+            productMetrics.pageServed(items.size());
+            // rows modified at until were all read, any of them is on this page and the last has the highest id
+            Product last = items.isEmpty() ? null : items.get(items.size() - 1);
+            return new ProductPage(items, last != null && last.getUpdatedAt().equals(until) ? last.getId() : null,
+                    until);
+        }
+        items = items.subList(0, limit);
+        Product last = items.get(limit - 1);
+        productMetrics.pageServed(items.size());
+        return new ProductPage(items, last.getId(), last.getUpdatedAt());
+    }
+
+    /**
+     * Hands every product to {@code action} in id order while the rows come off the cursor.
+     * Each entity is detached once consumed so memory stays flat regardless of catalog size.
+     */
+    public void streamAll(Consumer<Product> action) {
+        long[] rows = new long[1];
+        try {
+            routingProductRepository.streamAll(product -> {
+                action.accept(product);
+                rows[0]++;
+            });
+        } finally {
+            productMetrics.streamServed(rows[0]);
+        }
+    }
+
+    /**
+     * Applies creates, then updates, then deletes of the batch in one transaction.
+     * Sharded, in one transaction per shard and section; a failing one does not undo those before it.
+     */
+    @Transactional
+    public List<ProductBatchResult> applyBatch(ProductBatchRequest request) {
+        List<ProductBatchResult> results = new ArrayList<>();
+        results.addAll(saveAll(request.getCreate()));
+        results.addAll(updateAll(request.getUpdate()));
+        results.addAll(deleteAll(request.getDelete()));
+        return results;
+    }
+
+    /**
+     * Inserts the products in chunks; ids come from a pooled sequence so the inserts are JDBC batched.
+     * The cache is left alone, a bulk import should not push hot products out of it.
+     */
+    @Transactional
+    public List<ProductBatchResult> saveAll(List<Product> products) {
+        LOGGER.info("Saving batch of {} products", products.size());
+        productMetrics.createBatch(products.size());
+        return routingProductRepository.batchOnNewShards(products, this::saveChunks);
+    }
+
+    private List<ProductBatchResult> saveChunks(List<Product> products) {
+        List<ProductBatchResult> results = new ArrayList<>(products.size());
+        for (int from = 0; from < products.size(); from += BATCH_CHUNK_SIZE) {
+            List<Product> chunk = products.subList(from, Math.min(from + BATCH_CHUNK_SIZE, products.size()));
+            List<Product> toSave = new ArrayList<>(chunk.size());
+            for (Product product : chunk) {
+                if (product != null) {
+                    product.setId(null);
+                    product.setVersion(1);
+                    toSave.add(product);
+                }
+            }
+            List<Product> saved = new ArrayList<>(toSave.size());
+            productRepository.saveAll(toSave).forEach(saved::add);
+            flushAndClear();
+
+            int savedIndex = 0;
+            List<ProductChange> changes = new ArrayList<>(saved.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                if (chunk.get(i) == null) {
+                    results.add(new ProductBatchResult(Operation.CREATE, from + i, null, null, Status.INVALID));
+                } else {
+                    Product product = saved.get(savedIndex++);
+                    changes.add(new ProductChange(Type.CREATED, product));
+                    results.add(new ProductBatchResult(Operation.CREATE, from + i,
+                            product.getId(), product.getVersion(), Status.CREATED));
+                }
+            }
+            productChangeFeed.appendAll(changes);
+            indexAfterCommit(saved);
+        }
+        return results;
+    }
+
+    /**
+     * Updates the products in chunks, loading each chunk with a single IN query.
+     * Unknown ids are reported as NOT_FOUND and products carrying a version other than
+     * the current one as CONFLICT; neither aborts the rest of the batch.
+     */
+    @Transactional
+    public List<ProductBatchResult> updateAll(List<Product> products) {
+        LOGGER.info("Updating batch of {} products", products.size());
+        productMetrics.updateBatch(products.size());
+        return routingProductRepository.batchById(products, product -> product == null ? null : product.getId(),
+                this::updateChunks);
+    }
+
+    private List<ProductBatchResult> updateChunks(List<Product> products) {
+        List<ProductBatchResult> results = new ArrayList<>(products.size());
+        for (int from = 0; from < products.size(); from += BATCH_CHUNK_SIZE) {
+            List<Product> chunk = products.subList(from, Math.min(from + BATCH_CHUNK_SIZE, products.size()));
+            Map<Integer, Product> existingProducts = routingProductRepository.findAllByIdAsMap(chunk.stream()
+                    .filter(Objects::nonNull)
+                    .map(Product::getId)
+                    .collect(Collectors.toList()));
+
+            Product[] updated = new Product[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                Product product = chunk.get(i);
+                if (product == null || product.getId() == null) {
+                    continue;
+                }
+                Product existingProduct = existingProducts.get(product.getId());
+                if (existingProduct == null
+                        || (product.getVersion() != null && !product.getVersion().equals(existingProduct.getVersion()))) {
+                    continue;
+                }
+                existingProduct.setName(product.getName());
+                existingProduct.setDescription(product.getDescription());
+                existingProduct.setQuantity(product.getQuantity());
+                updated[i] = existingProduct;
+            }
+            flushAndClear();
+
+            // versions are only bumped by the flush, results are built after it
+            List<ProductChange> changes = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                Product product = chunk.get(i);
+                if (updated[i] != null) {
+                    refreshAfterCommit(updated[i]);
+                    changes.add(new ProductChange(Type.UPDATED, updated[i]));
+                    results.add(new ProductBatchResult(Operation.UPDATE, from + i,
+                            updated[i].getId(), updated[i].getVersion(), Status.UPDATED));
+                } else if (product == null || product.getId() == null) {
+                    results.add(new ProductBatchResult(Operation.UPDATE, from + i, null, null, Status.INVALID));
+                } else if (existingProducts.containsKey(product.getId())) {
+                    productMetrics.versionConflict();
+                    results.add(new ProductBatchResult(Operation.UPDATE, from + i,
+                            product.getId(), existingProducts.get(product.getId()).getVersion(), Status.CONFLICT));
+                } else {
+                    results.add(new ProductBatchResult(Operation.UPDATE, from + i,
+                            product.getId(), null, Status.NOT_FOUND));
+                }
+            }
+            productChangeFeed.appendAll(changes);
+        }
+        return results;
+    }
+
+    /**
+     * Deletes the products in chunks, unknown ids are reported as NOT_FOUND.
+     */
+    @Transactional
+    public List<ProductBatchResult> deleteAll(List<Integer> ids) {
+        LOGGER.info("Deleting batch of {} products", ids.size());
+        productMetrics.deleteBatch(ids.size());
+        return routingProductRepository.batchById(ids, Function.identity(), this::deleteChunks);
+    }
+
+    private List<ProductBatchResult> deleteChunks(List<Integer> ids) {
+        List<ProductBatchResult> results = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += BATCH_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + BATCH_CHUNK_SIZE, ids.size()));
+            Map<Integer, Product> existingProducts = routingProductRepository.findAllByIdAsMap(chunk);
+
+            List<ProductChange> changes = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                Integer id = chunk.get(i);
+                Product existingProduct = id == null ? null : existingProducts.remove(id);
+                if (id == null) {
+                    results.add(new ProductBatchResult(Operation.DELETE, from + i, null, null, Status.INVALID));
+                } else if (existingProduct == null) {
+                    results.add(new ProductBatchResult(Operation.DELETE, from + i, id, null, Status.NOT_FOUND));
+                } else {
+                    productRepository.delete(existingProduct);
+                    changes.add(ProductChange.deleted(id));
+                    results.add(new ProductBatchResult(Operation.DELETE, from + i, id, null, Status.DELETED));
+                }
+            }
+            productChangeFeed.appendAll(changes);
+            flushAndClear();
+            removeAfterCommit(changes.stream().map(ProductChange::getProductId).collect(Collectors.toList()));
+        }
+        return results;
+    }
+
+    /**
+     * Installs the product as written in the cache, the search index, the inventory store and the
+     * inventory statistics once the transaction committed, so none of them ever shows a change that is
+     * rolled back.
+     */
+    private void refreshAfterCommit(Product product) {
+        Product committedProduct = new Product(product);
+        afterCommit(() -> {
+            productCache.update(committedProduct);
+            lookups.forget(committedProduct.getId());
+            productSearchIndex.index(committedProduct);
+            inventoryStore.sync(committedProduct);
+            inventoryStatistics.update(committedProduct);
+        });
+    }
+
+    /**
+     * Installs created products like {@link #refreshAfterCommit} but leaves the cache alone,
+     * a bulk import should not push hot products out of it.
+     */
+    private void indexAfterCommit(List<Product> products) {
+        List<Product> committedProducts = products.stream().map(Product::new).collect(Collectors.toList());
+        afterCommit(() -> committedProducts.forEach(product -> {
+            productSearchIndex.index(product);
+            inventoryStore.sync(product);
+            inventoryStatistics.update(product);
+        }));
+    }
+
+    /**
+     * Drops deleted products from the cache, the search index, the inventory store and the inventory
+     * statistics once the transaction committed; lookups started after the commit read the database again
+     * instead of joining one in flight. Only ids actually deleted: the store keeps a tombstone of each.
+     */
+    private void removeAfterCommit(List<Integer> ids) {
+        afterCommit(() -> ids.forEach(id -> {
+            productCache.evict(id);
+            lookups.forget(id);
+            productSearchIndex.remove(id);
+            inventoryStore.remove(id);
+            inventoryStatistics.remove(id);
+        }));
+    }
+
+    private int adjustInventory(Integer id, int delta, boolean floorAtZero) {
+        try {
+            return inventoryStore.adjust(id, delta, floorAtZero);
+        } catch (InsufficientStockException e) {
+            productMetrics.insufficientStock();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the inventory lock until the transaction completed, so the versions the store knows
+     * only move with what is committed.
+     */
+    private void lockInventory() {
+        inventoryStore.lock();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                inventoryStore.unlock();
+            }
+        });
+    }
+
+    /**
+     * Writes the quantities of {@code writes} if their rows are still at the version the store knows,
+     * logs the changes and has the store drop the written reservations once committed.
+     * @return the products written, at their new version
+     */
+    private List<Product> writeInventory(List<PendingWrite> writes) {
+        Instant now = Product.timestamp();
+        List<PendingWrite> written = new ArrayList<>(writes.size());
+        for (PendingWrite write : writes) {
+            if (productRepository.writeQuantityIfVersionMatches(write.getId(), write.getVersion(),
+                    write.getQuantity(), now) == 1) {
+                written.add(write);
+            }
+        }
+        if (written.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // registered ahead of the refreshes below, the store has moved on to the new versions when they run
+        afterCommit(() -> written.forEach(inventoryStore::written));
+        List<Product> products = new ArrayList<>(written.size());
+        productRepository.findAllById(written.stream().map(PendingWrite::getId).collect(Collectors.toList()))
+                .forEach(products::add);
+        List<ProductChange> changes = new ArrayList<>(products.size());
+        for (Product product : products) {
+            changes.add(new ProductChange(Type.UPDATED, product));
+            refreshAfterCommit(product);
+        }
+        productChangeFeed.appendAll(changes);
+        productMetrics.inventoryWritten(products.size());
+        return products;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
-    public Iterable<Product> findAll() {
-        return productRepository.findAll();
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
     }
 }
@@ -0,0 +1,66 @@
+package com.marketplace.products.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Runs one load per key at a time: callers asking for a key while its load is in flight wait for
+ * that load and get its result, or its exception, instead of loading again.
+ * <p>
+ * Loads started before a change of the key can still be joined until they complete, unless the key
+ * is {@link #forget forgotten} once the change committed.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * @param share hands a follower its own copy of the result of the load
+     */
+    public V execute(K key, Supplier<V> load, UnaryOperator<V> share) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = flights.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            V result = join(inFlight);
+            return result == null ? null : share.apply(result);
+        }
+        try {
+            V result = load.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * Lets callers from now on start a load of their own instead of joining the one in flight.
+     */
+    public void forget(K key) {
+        flights.remove(key);
+    }
+
+    public int inFlight() {
+        return flights.size();
+    }
+
+    private static <V> V join(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
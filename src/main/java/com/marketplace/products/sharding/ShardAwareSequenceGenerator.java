@@ -0,0 +1,106 @@
+package com.marketplace.products.sharding;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.env.spi.JdbcEnvironment;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.OptimizerFactory;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import javax.sql.DataSource;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pooled sequence generator that is a plain {@link SequenceStyleGenerator} until a shard is bound.
+ * <p>
+ * With a shard bound, each shard draws from its own copy of the sequence with its own pool and
+ * {@link ShardRouter#toId} turns the values into ids of that shard. With {@code global=true} every shard
+ * draws from the sequence of the {@link ShardRouter#HOME} shard instead and the values are used as they are,
+ * so the ids keep increasing across shards: the change log relies on that to be read in order.
+ * When sharding, entities must be persisted with their shard bound.
+ */
+public class ShardAwareSequenceGenerator extends SequenceStyleGenerator {
+
+    public static final String GLOBAL_PARAM = "global";
+
+    private boolean global;
+    private Class<?> returnClass;
+    private String optimizerStrategy;
+    private int incrementSize;
+    private long initialValue;
+    private Dialect dialect;
+
+    private final Map<Integer, Optimizer> optimizers = new ConcurrentHashMap<>();
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, params, serviceRegistry);
+        global = ConfigurationHelper.getBoolean(GLOBAL_PARAM, params, false);
+        returnClass = type.getReturnedClass();
+        optimizerStrategy = getOptimizer().getClass().getName();
+        incrementSize = getOptimizer().getIncrementSize();
+        initialValue = determineInitialValue(params);
+        dialect = serviceRegistry.getService(JdbcEnvironment.class).getDialect();
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+        ShardRouter.Binding binding = ShardRouter.binding();
+        if (binding == null || !binding.router.isEnabled()) {
+            return super.generate(session, object);
+        }
+        if (global) {
+            DataSource home = binding.router.getDataSources().get(ShardRouter.HOME);
+            return optimizer(ShardRouter.HOME).generate(homeCallback(home));
+        }
+        Serializable value = optimizer(binding.shard).generate(getDatabaseStructure().buildCallback(session));
+        return binding.router.toId(binding.shard, ((Number) value).longValue());
+    }
+
+    private Optimizer optimizer(int shard) {
+        return optimizers.computeIfAbsent(shard,
+                key -> OptimizerFactory.buildOptimizer(optimizerStrategy, returnClass, incrementSize, initialValue));
+    }
+
+    /**
+     * Reads the next sequence value on a connection of its own, outside the transaction of the session.
+     */
+    private AccessCallback homeCallback(DataSource home) {
+        return new AccessCallback() {
+            @Override
+            public IntegralDataTypeHolder getNextValue() {
+                String sql = dialect.getSequenceNextValString(getDatabaseStructure().getName());
+                try (Connection connection = home.getConnection();
+                     PreparedStatement statement = connection.prepareStatement(sql);
+                     ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    IntegralDataTypeHolder value = IdentifierGeneratorHelper.getIntegralDataTypeHolder(returnClass);
+                    value.initialize(resultSet, 1);
+                    return value;
+                } catch (SQLException e) {
+                    throw new HibernateException("Could not read the next value of " + getDatabaseStructure().getName(), e);
+                }
+            }
+
+            @Override
+            public String getTenantIdentifier() {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,347 @@
+package com.marketplace.products.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Partitions products across the databases listed in {@code products.sharding.urls}, enabled with
+ * {@code products.sharding.enabled=true}.
+ * <p>
+ * A product id tells its shard: with the {@code hash} strategy the shard is {@code id % shards} and
+ * shard {@code k} hands out ids {@code n * shards + k}; with {@code range} shard {@code k} owns the ids
+ * {@code k * rangeSize + 1} to {@code (k + 1) * rangeSize}. New products go to the shards in turn.
+ * <p>
+ * Work runs on a shard bound to the current thread with {@link #onShard}: connections taken while it is bound
+ * come from that shard. Transactions take their connection at the first statement, so binding inside
+ * a transactional method still routes it, but a transaction stays on the shard of its first statement.
+ * Without sharding everything runs on the one database.
+ */
+@Component
+public class ShardRouter {
+
+    /**
+     * The shard of changes that are not about one product, and of connections taken with no shard bound.
+     */
+    public static final int HOME = 0;
+
+    private static final ThreadLocal<Binding> BINDING = new ThreadLocal<>();
+    private static final Object END = new Object();
+
+    private final boolean enabled;
+    private final boolean range;
+    private final int rangeSize;
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    private final ExecutorService scatter = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "product-shards");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ShardRouter(@Value("${products.sharding.enabled:false}") boolean enabled,
+                       @Value("${products.sharding.strategy:hash}") String strategy,
+                       @Value("${products.sharding.range-size:100000000}") int rangeSize,
+                       @Value("${products.sharding.urls:}") List<String> urls,
+                       @Value("${products.sharding.pool-size:10}") int poolSize,
+                       @Value("${spring.datasource.username:sa}") String username,
+                       @Value("${spring.datasource.password:}") String password) {
+        if (!strategy.equals("hash") && !strategy.equals("range")) {
+            throw new IllegalArgumentException("Unknown sharding strategy " + strategy);
+        }
+        this.enabled = enabled;
+        this.range = strategy.equals("range");
+        this.rangeSize = rangeSize;
+        if (!enabled) {
+            return;
+        }
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("products.sharding.urls lists no shard");
+        }
+        if (range && (long) rangeSize * urls.size() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Id ranges of " + urls.size() + " shards exceed the int range");
+        }
+        for (int shard = 0; shard < urls.size(); shard++) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("products-shard-" + shard);
+            dataSource.setJdbcUrl(urls.get(shard).trim());
+            dataSource.setUsername(username);
+            dataSource.setPassword(password);
+            dataSource.setMaximumPoolSize(poolSize);
+            dataSources.add(dataSource);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getShardCount() {
+        return enabled ? dataSources.size() : 1;
+    }
+
+    public List<DataSource> getDataSources() {
+        return Collections.unmodifiableList(dataSources);
+    }
+
+    public int shardOf(int id) {
+        if (!enabled) {
+            return HOME;
+        }
+        if (range) {
+            return Math.min(Math.max(id - 1, 0) / rangeSize, dataSources.size() - 1);
+        }
+        return Math.floorMod(id, dataSources.size());
+    }
+
+    /**
+     * The shard to create the next product on.
+     */
+    public int nextShard() {
+        return enabled ? Math.floorMod(nextShard.getAndIncrement(), dataSources.size()) : HOME;
+    }
+
+    /**
+     * The id of the {@code value}th product of {@code shard}.
+     * @throws IllegalStateException when the shard has no ids left
+     */
+    public int toId(int shard, long value) {
+        long id = range ? (long) shard * rangeSize + value : value * dataSources.size() + shard;
+        if (value < 1 || (range && value > rangeSize) || id > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Shard " + shard + " ran out of product ids");
+        }
+        return (int) id;
+    }
+
+    /**
+     * Groups {@code ids} by shard, leaving out nulls.
+     */
+    public Map<Integer, List<Integer>> groupByShard(Collection<Integer> ids) {
+        Map<Integer, List<Integer>> idsByShard = new TreeMap<>();
+        for (Integer id : ids) {
+            if (id != null) {
+                idsByShard.computeIfAbsent(shardOf(id), shard -> new ArrayList<>()).add(id);
+            }
+        }
+        return idsByShard;
+    }
+
+    public <T> T onShard(int shard, Supplier<T> action) {
+        Binding previous = BINDING.get();
+        BINDING.set(new Binding(this, shard));
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                BINDING.remove();
+            } else {
+                BINDING.set(previous);
+            }
+        }
+    }
+
+    public void onShard(int shard, Runnable action) {
+        onShard(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs {@code action} on every shard, in parallel.
+     * @return the results in shard order
+     */
+    public <T> List<T> onEachShard(IntFunction<T> action) {
+        List<Integer> shards = new ArrayList<>();
+        for (int shard = 0; shard < getShardCount(); shard++) {
+            shards.add(shard);
+        }
+        return new ArrayList<>(onShards(shards, action).values());
+    }
+
+    /**
+     * Runs {@code action} on each of {@code shards}, in parallel when there are several.
+     * @return the results by shard
+     */
+    public <T> Map<Integer, T> onShards(Collection<Integer> shards, IntFunction<T> action) {
+        Map<Integer, T> results = new TreeMap<>();
+        if (shards.size() == 1) {
+            int shard = shards.iterator().next();
+            results.put(shard, onShard(shard, () -> action.apply(shard)));
+            return results;
+        }
+        Map<Integer, Future<T>> futures = new TreeMap<>();
+        for (int shard : shards) {
+            futures.put(shard, scatter.submit(() -> onShard(shard, () -> action.apply(shard))));
+        }
+        for (Map.Entry<Integer, Future<T>> future : futures.entrySet()) {
+            results.put(future.getKey(), join(future.getValue()));
+        }
+        return results;
+    }
+
+    /**
+     * Hands the items every shard produces to {@code action} merged in {@code order}, while the shards are
+     * still producing them. Each producer gets its shard and a sink to pass its items to in {@code order}.
+     */
+    public <T> void forEachMerged(Comparator<T> order, BiConsumer<Integer, Consumer<T>> producer,
+                                  Consumer<T> action) {
+        if (getShardCount() == 1) {
+            onShard(HOME, () -> producer.accept(HOME, action));
+            return;
+        }
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<BlockingQueue<Object>> queues = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int shard = 0; shard < getShardCount(); shard++) {
+            BlockingQueue<Object> queue = new ArrayBlockingQueue<>(1000);
+            int producingShard = shard;
+            queues.add(queue);
+            futures.add(scatter.submit(() -> {
+                try {
+                    onShard(producingShard, () -> producer.accept(producingShard, item -> put(queue, item, cancelled)));
+                    put(queue, END, cancelled);
+                } catch (RuntimeException e) {
+                    put(queue, new Failure(e), cancelled);
+                }
+            }));
+        }
+        try {
+            PriorityQueue<Head<T>> heads = new PriorityQueue<>((a, b) -> order.compare(a.item, b.item));
+            for (BlockingQueue<Object> queue : queues) {
+                Head<T> head = next(queue);
+                if (head != null) {
+                    heads.add(head);
+                }
+            }
+            while (!heads.isEmpty()) {
+                Head<T> head = heads.poll();
+                action.accept(head.item);
+                Head<T> next = next(head.queue);
+                if (next != null) {
+                    heads.add(next);
+                }
+            }
+        } finally {
+            cancelled.set(true);
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        scatter.shutdownNow();
+        dataSources.forEach(HikariDataSource::close);
+    }
+
+    /**
+     * The shard bound to the current thread, null if none is.
+     */
+    static Binding binding() {
+        return BINDING.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Head<T> next(BlockingQueue<Object> queue) {
+        Object item;
+        try {
+            item = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while merging shards", e);
+        }
+        if (item == END) {
+            return null;
+        }
+        if (item instanceof Failure) {
+            throw ((Failure) item).exception;
+        }
+        return new Head<>((T) item, queue);
+    }
+
+    private static void put(BlockingQueue<Object> queue, Object item, AtomicBoolean cancelled) {
+        try {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled.get()) {
+                    throw new IllegalStateException("Merge of shards cancelled");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Merge of shards cancelled", e);
+        }
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a shard", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * A shard bound to a thread, with the router it belongs to.
+     */
+    static final class Binding {
+
+        final ShardRouter router;
+        final int shard;
+
+        Binding(ShardRouter router, int shard) {
+            this.router = router;
+            this.shard = shard;
+        }
+    }
+
+    private static final class Head<T> {
+
+        final T item;
+        final BlockingQueue<Object> queue;
+
+        Head(T item, BlockingQueue<Object> queue) {
+            this.item = item;
+            this.queue = queue;
+        }
+    }
+
+    private static final class Failure {
+
+        final RuntimeException exception;
+
+        Failure(RuntimeException exception) {
+            this.exception = exception;
+        }
+    }
+}
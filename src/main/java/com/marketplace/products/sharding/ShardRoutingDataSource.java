@@ -0,0 +1,15 @@
+package com.marketplace.products.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Hands out connections of the shard bound to the current thread, of the home shard if none is.
+ */
+class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        ShardRouter.Binding binding = ShardRouter.binding();
+        return binding == null ? ShardRouter.HOME : binding.shard;
+    }
+}
@@ -0,0 +1,50 @@
+package com.marketplace.products.sharding;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the single datasource with one routing to the shards, each migrated by Flyway on its own.
+ */
+@Configuration
+@ConditionalOnProperty(name = "products.sharding.enabled", havingValue = "true")
+public class ShardingConfiguration {
+
+    /**
+     * Lazy connections so a transaction only takes one once its first statement runs,
+     * after the code inside it bound the shard.
+     */
+    @Bean
+    @Primary
+    public DataSource shardedDataSource(ShardRouter shardRouter) {
+        List<DataSource> shards = shardRouter.getDataSources();
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource();
+        routingDataSource.setTargetDataSources(targets);
+        routingDataSource.setDefaultTargetDataSource(shards.get(ShardRouter.HOME));
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    public FlywayMigrationStrategy shardedMigration(ShardRouter shardRouter) {
+        return flyway -> {
+            for (DataSource shard : shardRouter.getDataSources()) {
+                Flyway.configure().configuration(flyway.getConfiguration()).dataSource(shard).load().migrate();
+            }
+        };
+    }
+}
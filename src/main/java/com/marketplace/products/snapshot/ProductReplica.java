@@ -0,0 +1,56 @@
+package com.marketplace.products.snapshot;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Read-only replica mode, enabled with {@code products.snapshot.replica=true}: reads are answered from the
+ * mapped snapshot instead of the database and writes are refused. The snapshot is mapped at startup, which
+ * fails if there is none, and again on {@link #reload()} once a newer one was written.
+ */
+@Component
+public class ProductReplica {
+
+    private static final Logger LOGGER = LogManager.getLogger(ProductReplica.class);
+
+    private final boolean enabled;
+    private final Path file;
+    private volatile ProductSnapshot snapshot;
+
+    public ProductReplica(@Value("${products.snapshot.replica:false}") boolean enabled,
+                          @Value("${products.snapshot.file:data/products.snapshot}") String file) throws IOException {
+        this.enabled = enabled;
+        this.file = Paths.get(file);
+        if (enabled) {
+            reload();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The snapshot reads are served from, null unless the replica mode is enabled.
+     */
+    public ProductSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Maps the current snapshot file, requests in flight finish on the previous one.
+     */
+    public ProductSnapshot reload() throws IOException {
+        ProductSnapshot loaded = ProductSnapshot.open(file);
+        snapshot = loaded;
+        LOGGER.info("Serving {} products read-only from {} at change {}",
+                loaded.size(), file, loaded.getChangeCursor());
+        return loaded;
+    }
+}
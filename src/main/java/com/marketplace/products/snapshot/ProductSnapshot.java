@@ -0,0 +1,315 @@
+package com.marketplace.products.snapshot;
+
+import com.marketplace.products.model.Product;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Read-only catalog snapshot in a memory-mapped file.
+ * <p>
+ * Layout, big-endian: the magic and format version, the product records in id order, an index of
+ * {@code (id, record offset)} pairs sorted by id, and a trailer with the product count, the change log
+ * cursor the snapshot is consistent with and the offset of the index. A lookup is a binary search over
+ * the index and decodes one record straight from the mapping, nothing is loaded on the heap up front.
+ * <p>
+ * The mapping is released by the garbage collector once the snapshot is no longer referenced.
+ * Files are limited to 2GB, the size of one mapping.
+ */
+public final class ProductSnapshot {
+
+    private static final int MAGIC = 0x50534E50;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int TRAILER_SIZE = 24;
+    private static final int INDEX_ENTRY_SIZE = 8;
+
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+    private static final int NULL_STRING = -1;
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final int size;
+    private final long changeCursor;
+    private final int indexOffset;
+
+    private ProductSnapshot(Path file, ByteBuffer buffer, int size, long changeCursor, int indexOffset) {
+        this.file = file;
+        this.buffer = buffer;
+        this.size = size;
+        this.changeCursor = changeCursor;
+        this.indexOffset = indexOffset;
+    }
+
+    /**
+     * Maps an existing snapshot file.
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static ProductSnapshot open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + file + " is larger than 2GB");
+            }
+            if (length < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("Snapshot " + file + " is truncated");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException(file + " is not a product snapshot of format " + FORMAT_VERSION);
+        }
+        int trailer = buffer.limit() - TRAILER_SIZE;
+        int size = buffer.getInt(trailer);
+        long changeCursor = buffer.getLong(trailer + 4);
+        long indexOffset = buffer.getLong(trailer + 12);
+        if (buffer.getInt(trailer + 20) != MAGIC
+                || indexOffset + (long) size * INDEX_ENTRY_SIZE != trailer) {
+            throw new IOException("Snapshot " + file + " is truncated");
+        }
+        return new ProductSnapshot(file, buffer, size, changeCursor, (int) indexOffset);
+    }
+
+    /**
+     * Starts a new snapshot at {@code file}. Products have to be added in increasing id order;
+     * the file is replaced atomically on {@link Writer#commit()}, readers of the old one are unaffected.
+     */
+    public static Writer writer(Path file, long changeCursor) throws IOException {
+        return new Writer(file, changeCursor);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Position in the change log up to which the snapshot includes the changes.
+     */
+    public long getChangeCursor() {
+        return changeCursor;
+    }
+
+    /**
+     * @return the product with this id, or null if the snapshot has none
+     */
+    public Product find(int id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = idAt(mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return read(offsetAt(mid));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Up to {@code limit} products with id greater than {@code after}, in id order.
+     */
+    public List<Product> page(int after, int limit) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (idAt(mid) <= after) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int end = (int) Math.min(size, (long) low + limit);
+        List<Product> products = new ArrayList<>(end - low);
+        for (int i = low; i < end; i++) {
+            products.add(read(offsetAt(i)));
+        }
+        return products;
+    }
+
+    public void forEach(Consumer<Product> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(read(offsetAt(i)));
+        }
+    }
+
+    private int idAt(int entry) {
+        return buffer.getInt(indexOffset + entry * INDEX_ENTRY_SIZE);
+    }
+
+    private int offsetAt(int entry) {
+        return buffer.getInt(indexOffset + entry * INDEX_ENTRY_SIZE + 4);
+    }
+
+    private Product read(int offset) {
+        // a view per read keeps the shared buffer's position untouched, so readers need no locking
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset);
+        int id = record.getInt();
+        int version = record.getInt();
+        int quantity = record.getInt();
+        long createdAt = record.getLong();
+        long updatedAt = record.getLong();
+        String name = readString(record);
+        String description = readString(record);
+        Product product = new Product(id, name, description,
+                quantity == NULL_INT ? null : quantity,
+                version == NULL_INT ? null : version);
+        product.setCreatedAt(toInstant(createdAt));
+        product.setUpdatedAt(toInstant(updatedAt));
+        return product;
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Instant toInstant(long micros) {
+        return micros == NULL_TIMESTAMP ? null : Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+    /**
+     * Streams records to a temporary file next to the target and keeps the index in two int arrays,
+     * eight bytes per product.
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path file;
+        private final Path temporary;
+        private final long changeCursor;
+        private final DataOutputStream out;
+
+        private int[] ids = new int[1024];
+        private int[] offsets = new int[1024];
+        private int size;
+        private boolean committed;
+
+        private Writer(Path file, long changeCursor) throws IOException {
+            this.file = file;
+            this.changeCursor = changeCursor;
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            this.temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+        }
+
+        /**
+         * Appends a product, unchecked so it can be handed out as a {@code Consumer<Product>}.
+         */
+        public void add(Product product) {
+            int id = product.getId();
+            if (size > 0 && id <= ids[size - 1]) {
+                throw new IllegalArgumentException("Products must be added in increasing id order, got " + id
+                        + " after " + ids[size - 1]);
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            ids[size] = id;
+            offsets[size] = position();
+            size++;
+            try {
+                out.writeInt(id);
+                out.writeInt(product.getVersion() == null ? NULL_INT : product.getVersion());
+                out.writeInt(product.getQuantity() == null ? NULL_INT : product.getQuantity());
+                out.writeLong(toMicros(product.getCreatedAt()));
+                out.writeLong(toMicros(product.getUpdatedAt()));
+                writeString(product.getName());
+                writeString(product.getDescription());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Writes the index and trailer and moves the file in place of the previous snapshot.
+         */
+        public void commit() throws IOException {
+            int indexOffset = position();
+            for (int i = 0; i < size; i++) {
+                out.writeInt(ids[i]);
+                out.writeInt(offsets[i]);
+            }
+            out.writeInt(size);
+            out.writeLong(changeCursor);
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+            out.close();
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        /**
+         * Discards the temporary file unless the snapshot was committed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        private int position() {
+            // DataOutputStream counts up to Integer.MAX_VALUE and then stays there
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Snapshot " + file + " would be larger than 2GB");
+            }
+            return out.size();
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(NULL_STRING);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static long toMicros(Instant instant) {
+            return instant == null ? NULL_TIMESTAMP : ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+        }
+    }
+}
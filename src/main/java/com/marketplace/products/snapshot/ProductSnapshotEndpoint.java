@@ -0,0 +1,58 @@
+package com.marketplace.products.snapshot;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code GET /actuator/snapshot} describes the current snapshot. {@code POST /actuator/snapshot} writes
+ * a new one, or on a replica maps the latest one written by the primary.
+ */
+@Component
+@Endpoint(id = "snapshot")
+public class ProductSnapshotEndpoint {
+
+    private final ProductSnapshotService productSnapshotService;
+    private final ProductReplica productReplica;
+
+    public ProductSnapshotEndpoint(ProductSnapshotService productSnapshotService, ProductReplica productReplica) {
+        this.productSnapshotService = productSnapshotService;
+        this.productReplica = productReplica;
+    }
+
+    @ReadOperation
+    public Map<String, Object> snapshot() throws IOException {
+        if (productReplica.isEnabled()) {
+            return describe(productReplica.snapshot());
+        }
+        if (!Files.exists(productSnapshotService.getFile())) {
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("file", productSnapshotService.getFile().toString());
+            description.put("exists", false);
+            return description;
+        }
+        return describe(ProductSnapshot.open(productSnapshotService.getFile()));
+    }
+
+    @WriteOperation
+    public Map<String, Object> write() throws IOException {
+        return describe(productReplica.isEnabled() ? productSnapshotService.reload() : productSnapshotService.write());
+    }
+
+    private Map<String, Object> describe(ProductSnapshot snapshot) throws IOException {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("file", snapshot.getFile().toString());
+        description.put("exists", true);
+        description.put("products", snapshot.size());
+        description.put("changeCursor", snapshot.getChangeCursor());
+        description.put("bytes", Files.size(snapshot.getFile()));
+        description.put("replica", productReplica.isEnabled());
+        return description;
+    }
+}
@@ -0,0 +1,146 @@
+package com.marketplace.products.snapshot;
+
+import com.marketplace.products.inventory.InventoryStatisticsReconciler;
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductChange;
+import com.marketplace.products.model.ProductChange.Type;
+import com.marketplace.products.model.ProductChangePage;
+import com.marketplace.products.search.ProductSearchIndex;
+import com.marketplace.products.service.ProductCache;
+import com.marketplace.products.service.ProductChangeFeed;
+import com.marketplace.products.service.ProductService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Writes catalog snapshots and warms the product cache from the last one at startup.
+ * <p>
+ * A snapshot records the change log cursor it is consistent with, so a node starting from an older
+ * snapshot replays the logged changes after it and does not serve the products as they were back then.
+ */
+@Service
+public class ProductSnapshotService {
+
+    private static final Logger LOGGER = LogManager.getLogger(ProductSnapshotService.class);
+
+    private static final int CATCH_UP_PAGE_SIZE = 1000;
+
+    private final ProductService productService;
+    private final ProductCache productCache;
+    private final ProductChangeFeed productChangeFeed;
+    private final ProductReplica productReplica;
+    private final ProductSearchIndex productSearchIndex;
+    private final InventoryStatisticsReconciler inventoryStatisticsReconciler;
+    private final Path file;
+    private final boolean warmCache;
+
+    public ProductSnapshotService(ProductService productService, ProductCache productCache,
+                                  ProductChangeFeed productChangeFeed, ProductReplica productReplica,
+                                  ProductSearchIndex productSearchIndex,
+                                  InventoryStatisticsReconciler inventoryStatisticsReconciler,
+                                  @Value("${products.snapshot.file:data/products.snapshot}") String file,
+                                  @Value("${products.snapshot.warm-cache:false}") boolean warmCache) {
+        this.productService = productService;
+        this.productCache = productCache;
+        this.productChangeFeed = productChangeFeed;
+        this.productReplica = productReplica;
+        this.productSearchIndex = productSearchIndex;
+        this.inventoryStatisticsReconciler = inventoryStatisticsReconciler;
+        this.file = Paths.get(file);
+        this.warmCache = warmCache;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Writes every product of the database to a new snapshot that replaces the previous one.
+     * @throws IllegalStateException on a replica, which has no catalog of its own to write
+     */
+    public synchronized ProductSnapshot write() throws IOException {
+        if (productReplica.isEnabled()) {
+            throw new IllegalStateException("A read-only replica does not write snapshots");
+        }
+        long start = System.nanoTime();
+        // every change up to the cursor is committed, so the products streamed next include it
+        long changeCursor = productChangeFeed.head();
+        try (ProductSnapshot.Writer writer = ProductSnapshot.writer(file, changeCursor)) {
+            productService.streamAll(writer::add);
+            writer.commit();
+        }
+        ProductSnapshot snapshot = ProductSnapshot.open(file);
+        LOGGER.info("Wrote a snapshot of {} products to {} at change {} in {} ms", snapshot.size(), file,
+                changeCursor, (System.nanoTime() - start) / 1_000_000);
+        return snapshot;
+    }
+
+    /**
+     * Maps the newest snapshot on a replica, drops the products cached from the previous one and rebuilds
+     * what was built from it: the search index, which until done finds only part of the catalog, and the
+     * inventory statistics, corrected in place.
+     */
+    public ProductSnapshot reload() throws IOException {
+        ProductSnapshot snapshot = productReplica.reload();
+        productCache.clear();
+        if (productSearchIndex.isEnabled()) {
+            // the removed products are not in the new snapshot, indexing it alone would keep them
+            productSearchIndex.clear();
+            productService.streamAll(productSearchIndex::index);
+        }
+        inventoryStatisticsReconciler.reconcile();
+        return snapshot;
+    }
+
+    /**
+     * Fills the product cache from the snapshot, up to its size, then replays the changes logged
+     * since the snapshot was written. Versions keep the newer of both, whatever order they arrive in.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmCache() {
+        if (!warmCache || productReplica.isEnabled() || !productCache.isEnabled()) {
+            return;
+        }
+        if (!Files.exists(file)) {
+            LOGGER.info("No snapshot at {}, the product cache starts cold", file);
+            return;
+        }
+        long start = System.nanoTime();
+        ProductSnapshot snapshot;
+        try {
+            snapshot = ProductSnapshot.open(file);
+        } catch (IOException e) {
+            LOGGER.warn("Could not read the snapshot at {}, the product cache starts cold", file, e);
+            return;
+        }
+        int loaded = 0;
+        for (Product product : snapshot.page(Integer.MIN_VALUE, Math.min(snapshot.size(), productCache.maxSize()))) {
+            productCache.cache(product);
+            loaded++;
+        }
+        int replayed = 0;
+        ProductChangePage changes = productChangeFeed.changesAfter(snapshot.getChangeCursor(), CATCH_UP_PAGE_SIZE);
+        while (!changes.getChanges().isEmpty()) {
+            for (ProductChange change : changes.getChanges()) {
+                if (change.getType() == Type.DELETED) {
+                    productCache.evict(change.getProductId());
+                } else {
+                    productCache.update(change.toProduct());
+                }
+                replayed++;
+            }
+            changes = productChangeFeed.changesAfter(changes.getNext(), CATCH_UP_PAGE_SIZE);
+        }
+        LOGGER.info("Product cache warmed with {} products from {} and {} later changes in {} ms",
+                loaded, file, replayed, (System.nanoTime() - start) / 1_000_000);
+    }
+}
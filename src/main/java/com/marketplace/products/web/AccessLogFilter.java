@@ -0,0 +1,48 @@
+package com.marketplace.products.web;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+/**
+ * Writes one key=value line per request to the {@code access} logger.
+ * Numbers go through {@code Unbox} so the line is built without allocating on the request thread.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    private static final Logger ACCESS_LOG = LogManager.getLogger("access");
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        if (!ACCESS_LOG.isInfoEnabled()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ACCESS_LOG.info("method={} uri={} query={} status={} durationMicros={} client={}",
+                    request.getMethod(),
+                    request.getRequestURI(),
+                    request.getQueryString() == null ? "-" : request.getQueryString(),
+                    box(response.getStatus()),
+                    box((System.nanoTime() - start) / 1000),
+                    request.getRemoteAddr());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.marketplace.products.web;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in request execution on virtual threads, enabled with {@code products.execution.mode=virtual}.
+ * Tomcat hands every request to a new virtual thread instead of its bounded worker pool, and so does
+ * Spring MVC for streamed responses, so a request blocked on JDBC no longer holds a platform thread.
+ * Virtual threads need JDK 21: the executor is looked up reflectively since the build targets 11,
+ * and on an older runtime the default thread pools are kept with a warning.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "products.execution.mode", havingValue = "virtual")
+public class ExecutionModeConfiguration implements DisposableBean {
+
+    private static final Logger LOGGER = LogManager.getLogger(ExecutionModeConfiguration.class);
+
+    private final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            if (executor != null) {
+                protocolHandler.setExecutor(executor);
+            }
+        };
+    }
+
+    @Bean
+    public WebMvcConfigurer virtualThreadAsyncSupportConfigurer() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                if (executor != null) {
+                    configurer.setTaskExecutor(new TaskExecutorAdapter(executor));
+                }
+            }
+        };
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Whether this runtime can run requests on virtual threads.
+     */
+    public boolean isVirtual() {
+        return executor != null;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            LOGGER.info("Handling requests on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            LOGGER.warn("Virtual threads need JDK 21, running on {}: keeping the platform thread pools",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+}
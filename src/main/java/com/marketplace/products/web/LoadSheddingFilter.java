@@ -0,0 +1,177 @@
+package com.marketplace.products.web;
+
+import com.marketplace.products.ratelimit.ConcurrencyLimiter;
+import com.marketplace.products.ratelimit.RateLimiter;
+import com.marketplace.products.ratelimit.RateLimiter.Kind;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Refuses product requests over the budgets of the {@link RateLimiter} with 429 and those over the limit of
+ * the {@link ConcurrencyLimiter} with 503, both with a {@code Retry-After} in seconds. Clients are told apart by
+ * address. Behind a trusted gateway setting {@code products.rate-limit.client-header},
+ * {@code products.rate-limit.trust-client-header=true} tells them apart by that header instead: taken from
+ * anyone else, a client could pick a fresh budget with every request.
+ * <p>
+ * Streams are rate limited but not counted in flight: they last as long as the catalog takes to send. What is
+ * a stream is decided by the handler the request maps to, an endpoint producing NDJSON or server-sent events,
+ * so an {@code Accept} header alone does not take a request past the limit.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class LoadSheddingFilter extends OncePerRequestFilter {
+
+    private static final List<String> STREAM_TYPES = Arrays.asList(MediaType.APPLICATION_NDJSON_VALUE,
+            MediaType.TEXT_EVENT_STREAM_VALUE);
+
+    private final RateLimiter rateLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    /**
+     * The mapping of the dispatcher, absent when the application does not serve the web.
+     */
+    private final ObjectProvider<HandlerMapping> handlerMapping;
+    private final String clientHeader;
+    private final boolean trustClientHeader;
+
+    private final Map<Kind, Counter> clientRefusals = new EnumMap<>(Kind.class);
+    private final Map<Kind, Counter> globalRefusals = new EnumMap<>(Kind.class);
+    private final Map<Kind, Counter> sheds = new EnumMap<>(Kind.class);
+
+    public LoadSheddingFilter(RateLimiter rateLimiter, ConcurrencyLimiter concurrencyLimiter, MeterRegistry registry,
+                              @Qualifier("requestMappingHandlerMapping")
+                                      ObjectProvider<HandlerMapping> handlerMapping,
+                              @Value("${products.rate-limit.client-header:X-Client-Id}") String clientHeader,
+                              @Value("${products.rate-limit.trust-client-header:false}") boolean trustClientHeader) {
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.handlerMapping = handlerMapping;
+        this.clientHeader = clientHeader;
+        this.trustClientHeader = trustClientHeader;
+        for (Kind kind : Kind.values()) {
+            clientRefusals.put(kind, rejectedCounter(registry, "client-rate", kind));
+            globalRefusals.put(kind, rejectedCounter(registry, "global-rate", kind));
+            sheds.put(kind, rejectedCounter(registry, "concurrency", kind));
+        }
+        if (concurrencyLimiter.isEnabled()) {
+            Gauge.builder("products.load-shedding.limit", concurrencyLimiter, ConcurrencyLimiter::getLimit)
+                    .description("Requests admitted in flight at most")
+                    .register(registry);
+            Gauge.builder("products.load-shedding.in-flight", concurrencyLimiter, ConcurrencyLimiter::getInFlight)
+                    .description("Requests in flight")
+                    .register(registry);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return (!rateLimiter.isEnabled() && !concurrencyLimiter.isEnabled())
+                || !request.getRequestURI().substring(request.getContextPath().length()).startsWith("/products");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Kind kind = kindOf(request);
+        if (rateLimiter.isEnabled()) {
+            RateLimiter.Refusal refusal = rateLimiter.tryAcquire(clientOf(request), kind);
+            if (refusal != null) {
+                (refusal.getLimit() == RateLimiter.Limit.CLIENT ? clientRefusals : globalRefusals).get(kind).increment();
+                long retryAfter = Math.max(1, (long) Math.ceil(refusal.getWaitNanos() / 1e9));
+                response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+                response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Request rate over budget");
+                return;
+            }
+        }
+        if (!concurrencyLimiter.isEnabled() || isStream(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (!concurrencyLimiter.tryAcquire()) {
+            sheds.get(kind).increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many requests in flight");
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            concurrencyLimiter.release(System.nanoTime() - start);
+        }
+    }
+
+    private String clientOf(HttpServletRequest request) {
+        if (!trustClientHeader) {
+            return request.getRemoteAddr();
+        }
+        String client = request.getHeader(clientHeader);
+        return client == null || client.isEmpty() ? request.getRemoteAddr() : client;
+    }
+
+    /**
+     * Bulk lookups are reads sent as POST.
+     */
+    private static Kind kindOf(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (method.equals("GET") || method.equals("HEAD") || method.equals("OPTIONS")
+                || request.getRequestURI().endsWith("/products:lookup")) {
+            return Kind.READ;
+        }
+        return Kind.WRITE;
+    }
+
+    /**
+     * Whether the dispatcher will hand the request to an endpoint producing a stream; requests it cannot map,
+     * e.g. with an {@code Accept} no endpoint produces, are not streams.
+     */
+    private boolean isStream(HttpServletRequest request) {
+        HandlerMapping mapping = handlerMapping.getIfAvailable();
+        if (mapping == null) {
+            return false;
+        }
+        HandlerExecutionChain chain;
+        try {
+            chain = mapping.getHandler(request);
+        } catch (Exception e) {
+            return false;
+        }
+        if (chain == null || !(chain.getHandler() instanceof HandlerMethod)) {
+            return false;
+        }
+        RequestMapping endpoint = ((HandlerMethod) chain.getHandler()).getMethodAnnotation(RequestMapping.class);
+        return endpoint != null && Arrays.stream(endpoint.produces()).anyMatch(STREAM_TYPES::contains);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry registry, String reason, Kind kind) {
+        return Counter.builder("products.requests.rejected")
+                .description("Product requests refused by rate limits and load shedding")
+                .tag("reason", reason)
+                .tag("kind", kind.name().toLowerCase())
+                .register(registry);
+    }
+}
@@ -0,0 +1,31 @@
+package com.marketplace.products.web;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductField;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Puts {@link Product} behind the {@value ProductField#FILTER_ID} Jackson filter in the application's
+ * ObjectMapper, so a response can leave out the fields a client did not ask for.
+ * By default every field is written. Done with a mix-in to keep the entity free of Jackson filters.
+ */
+@Configuration(proxyBeanMethods = false)
+public class ProductJsonConfiguration {
+
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer productFieldsFilterCustomizer() {
+        return builder -> builder
+                .mixIn(Product.class, ProductFieldsFilterMixIn.class)
+                .filters(new SimpleFilterProvider()
+                        .setDefaultFilter(SimpleBeanPropertyFilter.serializeAll()));
+    }
+
+    @JsonFilter(ProductField.FILTER_ID)
+    private abstract static class ProductFieldsFilterMixIn {
+    }
+}
@@ -0,0 +1,41 @@
+package com.marketplace.products.web;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Refuses product writes with 405 on a read-only replica, before they reach the controller.
+ * Bulk lookups are reads sent as POST and go through.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@ConditionalOnProperty(name = "products.snapshot.replica", havingValue = "true")
+public class ReadOnlyReplicaFilter extends OncePerRequestFilter {
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith("/products")
+                || method.equals("GET") || method.equals("HEAD") || method.equals("OPTIONS")
+                || path.equals("/products:lookup");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        response.setHeader(HttpHeaders.ALLOW, "GET, HEAD");
+        response.sendError(HttpStatus.METHOD_NOT_ALLOWED.value(), "Read-only replica");
+    }
+}
@@ -0,0 +1,242 @@
+package com.marketplace.products.writebehind;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductBatchResult;
+import com.marketplace.products.model.ProductBatchResult.Status;
+import com.marketplace.products.service.ProductService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Coalesces unconditional product updates, enabled with {@code products.write-behind.enabled=true}.
+ * <p>
+ * An update is acknowledged once it is in the {@link UpdateJournal}, and replaces any update of the same
+ * product still waiting. Every {@code products.write-behind.flush-interval} milliseconds the waiting
+ * updates are written as one batch, so reads lag accepted updates by about that much. At most
+ * {@code products.write-behind.max-pending} products wait at a time, updates of further ones are refused.
+ * Updates of products deleted meanwhile are dropped. Whatever an earlier run left in the journal is written
+ * once the application is up.
+ */
+@Component
+public class ProductWriteBehind {
+
+    private static final Logger LOGGER = LogManager.getLogger(ProductWriteBehind.class);
+
+    private final ProductService productService;
+    private final boolean enabled;
+    private final long flushInterval;
+    private final int maxPending;
+    private final UpdateJournal journal;
+
+    /**
+     * Appends and their map entries hold the read lock, switching to the next batch holds the write lock,
+     * so a batch and its journal segments always hold the same updates.
+     */
+    private final ReadWriteLock batchLock = new ReentrantReadWriteLock();
+    private volatile Map<Integer, Product> pending = new ConcurrentHashMap<>();
+    private final List<Path> unwrittenSegments = new ArrayList<>();
+
+    private final Counter accepted;
+    private final Counter refused;
+    private final Counter written;
+    private final Counter dropped;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ProductWriteBehind(ProductService productService, MeterRegistry registry,
+                              @Value("${products.write-behind.enabled:false}") boolean enabled,
+                              @Value("${products.write-behind.journal-dir:data/journal}") String journalDir,
+                              @Value("${products.write-behind.fsync:true}") boolean fsync,
+                              @Value("${products.write-behind.flush-interval:100}") long flushInterval,
+                              @Value("${products.write-behind.max-pending:10000}") int maxPending) throws IOException {
+        this.productService = productService;
+        this.enabled = enabled;
+        this.flushInterval = flushInterval;
+        this.maxPending = maxPending;
+        this.journal = enabled ? new UpdateJournal(Paths.get(journalDir), fsync) : null;
+
+        accepted = updatesCounter(registry, "accepted");
+        refused = updatesCounter(registry, "refused");
+        written = Counter.builder("products.write-behind.writes")
+                .description("Coalesced updates written to the database")
+                .register(registry);
+        dropped = Counter.builder("products.write-behind.dropped")
+                .description("Coalesced updates of products deleted before they were written")
+                .register(registry);
+        if (enabled) {
+            Gauge.builder("products.write-behind.pending", this, ProductWriteBehind::pendingCount)
+                    .description("Products with an update waiting to be written")
+                    .register(registry);
+            Gauge.builder("products.write-behind.coalescing.ratio", this, ProductWriteBehind::coalescingRatio)
+                    .description("Updates accepted per row written")
+                    .register(registry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Milliseconds between batches, about how long an accepted update takes to show.
+     */
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Journals the update of {@code product}, replacing any waiting update of the same product.
+     * @return false if the update is refused because too many products wait already
+     */
+    public boolean submit(Product product) {
+        batchLock.readLock().lock();
+        try {
+            Map<Integer, Product> batch = pending;
+            if (batch.size() >= maxPending && !batch.containsKey(product.getId())) {
+                refused.increment();
+                return false;
+            }
+            journal.sync(journal.append(product));
+            batch.put(product.getId(), product);
+            accepted.increment();
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            batchLock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        UpdateJournal.Recovery recovery = journal.recover();
+        if (!recovery.getProducts().isEmpty()) {
+            LOGGER.info("Writing {} updates left in the journal", recovery.getProducts().size());
+        }
+        batchLock.writeLock().lock();
+        try {
+            recovery.getProducts().forEach(product -> pending.put(product.getId(), product));
+            unwrittenSegments.addAll(recovery.getSegments());
+        } finally {
+            batchLock.writeLock().unlock();
+        }
+        flush();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the waiting updates in one transaction and deletes their journal segments. If the write fails
+     * they wait for the next batch, behind any newer update of the same product.
+     * @return the number of products written
+     */
+    public synchronized int flush() throws IOException {
+        if (!enabled) {
+            return 0;
+        }
+        Map<Integer, Product> batch;
+        batchLock.writeLock().lock();
+        try {
+            batch = pending;
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            pending = new ConcurrentHashMap<>();
+            unwrittenSegments.add(journal.rotate());
+        } finally {
+            batchLock.writeLock().unlock();
+        }
+
+        List<ProductBatchResult> results;
+        try {
+            results = productService.updateAll(new ArrayList<>(batch.values()));
+        } catch (RuntimeException e) {
+            batchLock.writeLock().lock();
+            try {
+                batch.forEach(pending::putIfAbsent);
+            } finally {
+                batchLock.writeLock().unlock();
+            }
+            throw e;
+        }
+        journal.delete(unwrittenSegments);
+        unwrittenSegments.clear();
+
+        int updated = 0;
+        for (ProductBatchResult result : results) {
+            if (result.getStatus() == Status.UPDATED) {
+                updated++;
+            }
+        }
+        written.increment(updated);
+        dropped.increment(results.size() - updated);
+        return updated;
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        try {
+            flush();
+        } finally {
+            // what could not be written stays in the journal for the next start
+            journal.close();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Writing coalesced updates failed", e);
+        }
+    }
+
+    private double coalescingRatio() {
+        double rows = written.count() + dropped.count();
+        return rows == 0 ? 0 : accepted.count() / rows;
+    }
+
+    private static Counter updatesCounter(MeterRegistry registry, String result) {
+        return Counter.builder("products.write-behind.updates")
+                .description("Updates submitted for coalescing")
+                .tag("result", result)
+                .register(registry);
+    }
+}
@@ -0,0 +1,242 @@
+package com.marketplace.products.writebehind;
+
+import com.marketplace.products.model.Product;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of product updates not written to the database yet, in numbered segment files.
+ * <p>
+ * A record is the payload length, its CRC32 and the payload: id, quantity (-1 length for none) and
+ * name and description as length-prefixed UTF-8 (-1 for null). A record torn by a crash fails its
+ * checksum and ends the segment on recovery. Appends are made durable by {@link #sync}, where one
+ * {@code force} covers every append written before it.
+ * <p>
+ * Not thread-safe for {@link #rotate} and {@link #recover}: the caller keeps appends out while they run.
+ */
+public class UpdateJournal implements AutoCloseable {
+
+    private static final String PREFIX = "updates-";
+    private static final String SUFFIX = ".journal";
+    private static final int HEADER_SIZE = 8;
+
+    private final Path dir;
+    private final boolean fsync;
+    private final Object forceLock = new Object();
+
+    private FileChannel channel;
+    private Path segment;
+    private long sequence;
+    private volatile long written;
+    private long forced;
+
+    public UpdateJournal(Path dir, boolean fsync) throws IOException {
+        this.dir = dir;
+        this.fsync = fsync;
+        Files.createDirectories(dir);
+        List<Path> segments = segments();
+        sequence = segments.isEmpty() ? 0 : sequenceOf(segments.get(segments.size() - 1));
+        open();
+    }
+
+    /**
+     * Segments left by an earlier run, oldest first, and the updates they hold in the order written.
+     * The current segment is not included.
+     */
+    public Recovery recover() throws IOException {
+        List<Path> segments = segments();
+        segments.remove(segment);
+        List<Product> products = new ArrayList<>();
+        for (Path file : segments) {
+            read(file, products);
+        }
+        return new Recovery(segments, products);
+    }
+
+    /**
+     * Writes the update to the current segment, not yet durable.
+     * @return the position to pass to {@link #sync}
+     */
+    public long append(Product product) throws IOException {
+        ByteBuffer record = encode(product);
+        synchronized (this) {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            written = channel.position();
+            return written;
+        }
+    }
+
+    /**
+     * Returns once everything up to {@code position} is on disk, forcing the segment unless
+     * a concurrent caller already did past it.
+     */
+    public void sync(long position) throws IOException {
+        if (!fsync) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forced >= position) {
+                return;
+            }
+            long target = written;
+            channel.force(false);
+            forced = target;
+        }
+    }
+
+    /**
+     * Closes the current segment and starts the next one.
+     * @return the closed segment, to delete once its updates are in the database
+     */
+    public Path rotate() throws IOException {
+        Path closed = segment;
+        close();
+        open();
+        return closed;
+    }
+
+    public void delete(List<Path> segments) throws IOException {
+        for (Path file : segments) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fsync) {
+            channel.force(false);
+        }
+        channel.close();
+    }
+
+    private void open() throws IOException {
+        sequence++;
+        segment = dir.resolve(String.format("%s%010d%s", PREFIX, sequence, SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        written = 0;
+        forced = 0;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(PREFIX)
+                            && file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static void read(Path file, List<Product> products) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                return;
+            }
+            ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            if (checksum != checksum(payload)) {
+                return;
+            }
+            products.add(decode(payload));
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    private static ByteBuffer encode(Product product) {
+        byte[] name = bytes(product.getName());
+        byte[] description = bytes(product.getDescription());
+        int length = 4 + 4 + 4 + 4 + (name == null ? 0 : name.length) + 4 + (description == null ? 0 : description.length);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + length);
+        record.position(HEADER_SIZE);
+        record.putInt(product.getId());
+        record.putInt(product.getQuantity() == null ? -1 : 4);
+        record.putInt(product.getQuantity() == null ? 0 : product.getQuantity());
+        putBytes(record, name);
+        putBytes(record, description);
+        ByteBuffer payload = record.duplicate();
+        payload.position(HEADER_SIZE);
+        payload.limit(record.position());
+        record.putInt(0, length);
+        record.putInt(4, checksum(payload));
+        record.flip();
+        return record;
+    }
+
+    private static Product decode(ByteBuffer payload) {
+        int id = payload.getInt();
+        boolean hasQuantity = payload.getInt() >= 0;
+        int quantity = payload.getInt();
+        String name = getString(payload);
+        String description = getString(payload);
+        return new Product(id, name, description, hasQuantity ? quantity : null, null);
+    }
+
+    private static int checksum(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * What an earlier run left in the journal.
+     */
+    public static final class Recovery {
+
+        private final List<Path> segments;
+        private final List<Product> products;
+
+        Recovery(List<Path> segments, List<Product> products) {
+            this.segments = segments;
+            this.products = products;
+        }
+
+        public List<Path> getSegments() {
+            return segments;
+        }
+
+        public List<Product> getProducts() {
+            return products;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+-- Sequences step by the allocationSize of the entities, Hibernate hands out the ids in between
+create sequence product_seq start with 1 increment by 50;
+create sequence product_change_seq start with 1 increment by 50;
+
+create table product (
+    id integer not null,
+    name varchar(255),
+    description varchar(255),
+    quantity integer,
+    version integer,
+    created_at timestamp(6),
+    updated_at timestamp(6),
+    primary key (id)
+);
+
+-- findProductByIdAndName and name lookups
+create index product_name on product (name);
+-- keyset pages of GET /products?modifiedSince=
+create index product_updated_at_id on product (updated_at, id);
+
+create table product_change (
+    id bigint not null,
+    type varchar(255),
+    product_id integer,
+    name varchar(255),
+    description varchar(255),
+    quantity integer,
+    version integer,
+    changed_at timestamp(6),
+    primary key (id)
+);
@@ -0,0 +1,9 @@
+-- The one instance allowed to append to product_change, see ProductChangeWriterLease
+create table product_change_writer (
+    id integer not null,
+    instance varchar(255),
+    renewed_at timestamp(6),
+    primary key (id)
+);
+
+insert into product_change_writer (id, instance, renewed_at) values (1, null, null);
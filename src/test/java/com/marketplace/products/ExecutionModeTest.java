@@ -0,0 +1,39 @@
+package com.marketplace.products;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.web.ExecutionModeConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "products.execution.mode=virtual")
+class ExecutionModeTest {
+
+    @Autowired
+    private ExecutionModeConfiguration executionMode;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    public void testVirtualModeServesRequests() {
+        assertEquals(Runtime.version().feature() >= 21, executionMode.isVirtual());
+
+        ResponseEntity<Product> created = restTemplate.postForEntity("/products",
+                new Product("Mug", "Ceramic mug", 3), Product.class);
+        assertEquals(HttpStatus.CREATED, created.getStatusCode());
+        assertNotNull(created.getBody());
+
+        ResponseEntity<Product> fetched = restTemplate.getForEntity("/products/" + created.getBody().getId(),
+                Product.class);
+        assertEquals(HttpStatus.OK, fetched.getStatusCode());
+        assertEquals("Mug", fetched.getBody().getName());
+    }
+}
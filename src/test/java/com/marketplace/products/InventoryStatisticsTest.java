@@ -0,0 +1,139 @@
+package com.marketplace.products;
+
+import com.marketplace.products.inventory.InventoryStatistics;
+import com.marketplace.products.inventory.InventoryStatisticsReconciler;
+import com.marketplace.products.model.InventoryStats;
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductBatchResult;
+import com.marketplace.products.model.StockLevel;
+import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.service.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class InventoryStatisticsTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private InventoryStatisticsReconciler reconciler;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        // other tests clean up behind the service
+        reconciler.reconcile();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        productRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Every kind of write moves the figures of GET /products/stats")
+    public void testWritesUpdateStats() throws Exception {
+        int first = productService.save(new Product("First", "Description", 5)).getId();
+        productService.save(new Product("Second", "Description", 0));
+        Product third = productService.save(new Product("Third", "Description", 50));
+        List<Integer> batch = productService.saveAll(Arrays.asList(new Product("Fourth", "Description", 3),
+                new Product("Fifth", "Description", 8))).stream()
+                .map(ProductBatchResult::getId)
+                .collect(Collectors.toList());
+
+        third.setQuantity(2);
+        productService.update(third);
+        productService.adjustQuantity(first, -5, true);
+        productService.delete(batch.get(1));
+        productService.deleteAll(Collections.singletonList(batch.get(0)));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/stats").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(3)))
+                .andExpect(jsonPath("$.totalQuantity", is(2)))
+                .andExpect(jsonPath("$.outOfStock", is(2)))
+                .andExpect(jsonPath("$.lowStockThreshold", is(10)))
+                .andExpect(jsonPath("$.lowStock", hasSize(1)))
+                .andExpect(jsonPath("$.lowStock[0].id", is(third.getId())))
+                .andExpect(jsonPath("$.lowStock[0].quantity", is(2)));
+        Assertions.assertEquals(0, reconciler.reconcile());
+    }
+
+    @Test
+    @DisplayName("Reconciliation corrects rows changed behind the service")
+    public void testReconciliationCorrectsDrift() {
+        int changed = productService.save(new Product("Changed", "Description", 5)).getId();
+        int removed = productService.save(new Product("Removed", "Description", 7)).getId();
+        productService.save(new Product("Kept", "Description", 20));
+
+        jdbcTemplate.update("update product set quantity = 1 where id = ?", changed);
+        jdbcTemplate.update("delete from product where id = ?", removed);
+        Assertions.assertEquals(32, productService.inventoryStats(10).getTotalQuantity());
+
+        Assertions.assertEquals(2, reconciler.reconcile());
+        InventoryStats stats = productService.inventoryStats(10);
+        Assertions.assertEquals(2, stats.getCount());
+        Assertions.assertEquals(21, stats.getTotalQuantity());
+        Assertions.assertEquals(Collections.singletonList(changed),
+                stats.getLowStock().stream().map(StockLevel::getId).collect(Collectors.toList()));
+        Assertions.assertNotNull(stats.getReconciledAt());
+    }
+
+    @Test
+    @DisplayName("Products written during a scan keep what their writes installed, older versions are ignored")
+    public void testWritesWinOverScan() {
+        InventoryStatistics statistics = new InventoryStatistics(new SimpleMeterRegistry(), true, 10);
+        statistics.update(new Product(1, "First", "Description", 4, 3));
+        statistics.update(new Product(1, "First", "Description", 9, 2));
+        Assertions.assertEquals(4, statistics.stats(10).getTotalQuantity());
+
+        statistics.update(new Product(2, "Second", "Description", 6, 1));
+        statistics.update(new Product(3, "Third", "Description", 1, 1));
+        int corrected = statistics.reconcile(scan -> {
+            scan.accept(new Product(1, "First", "Description", 4, 3));
+            // written after the scan read it, and created after the scan went past its id
+            statistics.update(new Product(2, "Second", "Description", 5, 2));
+            statistics.update(new Product(0, "Zeroth", "Description", 0, 1));
+            scan.accept(new Product(2, "Second", "Description", 6, 1));
+        });
+
+        Assertions.assertEquals(1, corrected);
+        InventoryStats stats = statistics.stats(10);
+        Assertions.assertEquals(3, stats.getCount());
+        Assertions.assertEquals(9, stats.getTotalQuantity());
+        Assertions.assertEquals(1, stats.getOutOfStock());
+        Assertions.assertEquals(Arrays.asList(1, 2),
+                stats.getLowStock().stream().map(StockLevel::getId).collect(Collectors.toList()));
+    }
+}
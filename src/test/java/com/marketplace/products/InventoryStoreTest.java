@@ -0,0 +1,184 @@
+package com.marketplace.products;
+
+import com.marketplace.products.inventory.InventoryStore;
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductChange;
+import com.marketplace.products.model.StockReservation;
+import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.service.InsufficientStockException;
+import com.marketplace.products.service.ProductCache;
+import com.marketplace.products.service.ProductChangeFeed;
+import com.marketplace.products.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// flushed by the tests themselves
+@SpringBootTest(properties = {"products.inventory.enabled=true", "products.inventory.capacity=1024",
+        "products.inventory.flush-interval=3600000"})
+public class InventoryStoreTest {
+
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 50;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private InventoryStore inventoryStore;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    @AfterEach
+    public void cleanUp() {
+        productService.flushInventory();
+        productRepository.deleteAll();
+        productCache.clear();
+    }
+
+    @Test
+    @DisplayName("Reservations are taken from the store all or nothing and written by the next flush")
+    public void testReservationsAreWrittenBehind() throws Exception {
+        Integer first = productService.save(new Product("First", "Description", 5)).getId();
+        Integer second = productService.save(new Product("Second", "Description", 1)).getId();
+        long cursor = productChangeFeed.head();
+
+        productService.reserve(Arrays.asList(new StockReservation(first, 2), new StockReservation(second, 1)));
+        Assertions.assertThrows(InsufficientStockException.class, () -> productService.reserve(
+                Arrays.asList(new StockReservation(first, 1), new StockReservation(second, 1))));
+
+        Assertions.assertEquals(3, inventoryStore.quantity(first));
+        Assertions.assertEquals(0, inventoryStore.quantity(second));
+        Assertions.assertEquals(3, productService.findStock(first).getQuantity());
+        // the database only has them once flushed
+        Assertions.assertEquals(5, productRepository.findProductById(first).getQuantity());
+        Assertions.assertEquals(2, inventoryStore.pendingCount());
+
+        Assertions.assertEquals(2, productService.flushInventory());
+        Product written = productRepository.findProductById(first);
+        Assertions.assertEquals(3, written.getQuantity());
+        Assertions.assertEquals(2, written.getVersion());
+        Assertions.assertEquals(0, productRepository.findProductById(second).getQuantity());
+        Assertions.assertEquals(0, inventoryStore.pendingCount());
+        Assertions.assertEquals(0, productService.flushInventory());
+
+        List<ProductChange> changes = productChangeFeed.changesAfter(cursor, 10).getChanges();
+        Assertions.assertEquals(2, changes.size());
+        Assertions.assertEquals(3, productCache.get(first).getQuantity());
+    }
+
+    @Test
+    @DisplayName("Writes through the database rebase the store and keep the reservations not written yet")
+    public void testDatabaseWritesRebaseTheStore() throws Exception {
+        Integer id = productService.save(new Product("Rebased", "Description", 10)).getId();
+        productService.reserve(Collections.singletonList(new StockReservation(id, 2)));
+
+        productService.update(new Product(id, "Rebased", "Description", 20, 1));
+        Assertions.assertEquals(18, inventoryStore.quantity(id));
+
+        Product adjusted = productService.adjustQuantity(id, 5, true);
+        Assertions.assertEquals(23, adjusted.getQuantity());
+        Assertions.assertEquals(3, adjusted.getVersion());
+        Assertions.assertEquals(23, productRepository.findProductById(id).getQuantity());
+        Assertions.assertThrows(InsufficientStockException.class, () -> productService.adjustQuantity(id, -24, true));
+
+        productService.delete(id);
+        Assertions.assertEquals(InventoryStore.NOT_HELD, inventoryStore.quantity(id));
+        Assertions.assertNull(productService.findStock(id));
+    }
+
+    @Test
+    @DisplayName("Syncs arriving after the delete of a product do not bring it back")
+    public void testLateSyncAfterRemove() {
+        InventoryStore store = new InventoryStore(true, 16);
+        store.sync(new Product(1, "First", "Description", 5, 1));
+        store.remove(1);
+        store.sync(new Product(1, "First", "Description", 5, 1));
+        store.sync(new Product(1, "First", "Description", 4, 2));
+        Assertions.assertEquals(InventoryStore.NOT_HELD, store.quantity(1));
+        Assertions.assertFalse(store.reserve(Collections.singletonList(new StockReservation(1, 1))));
+
+        // deleted before its creation was synced
+        store.remove(2);
+        store.sync(new Product(2, "Second", "Description", 5, 1));
+        Assertions.assertEquals(InventoryStore.NOT_HELD, store.quantity(2));
+    }
+
+    @Test
+    @DisplayName("Concurrent reservations, flushes and updates never sell more than the stock")
+    public void testConcurrentReservationsNeverOversell() throws Exception {
+        int stock = THREADS * ATTEMPTS_PER_THREAD / 2;
+        Integer id = productService.save(new Product("Flash sale", "Description", stock)).getId();
+        AtomicInteger reserved = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    try {
+                        productService.reserve(Collections.singletonList(new StockReservation(id, 1)));
+                        reserved.incrementAndGet();
+                    } catch (InsufficientStockException e) {
+                        // sold out
+                    }
+                }
+                return null;
+            }));
+        }
+        Future<?> writer = executor.submit(() -> {
+            start.await();
+            while (running.get()) {
+                productService.flushInventory();
+                // renames the product at its current version, the store keeps its reservations
+                Product product = productRepository.findProductById(id);
+                try {
+                    productService.update(new Product(id, "Renamed", "Description",
+                            product.getQuantity(), product.getVersion()));
+                } catch (OptimisticLockingFailureException e) {
+                    // flushed meanwhile
+                }
+            }
+            return null;
+        });
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        running.set(false);
+        writer.get();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(stock, reserved.get());
+        Assertions.assertEquals(0, inventoryStore.quantity(id));
+        productService.flushInventory();
+        Assertions.assertEquals(0, productRepository.findProductById(id).getQuantity());
+    }
+}
@@ -0,0 +1,205 @@
+package com.marketplace.products;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.ratelimit.ConcurrencyLimiter;
+import com.marketplace.products.ratelimit.RateLimiter;
+import com.marketplace.products.ratelimit.RateLimiter.Kind;
+import com.marketplace.products.ratelimit.TokenBucket;
+import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.service.ProductService;
+import com.marketplace.products.web.LoadSheddingFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"products.rate-limit.enabled=true", "products.rate-limit.trust-client-header=true",
+        "products.rate-limit.client.reads-per-second=1", "products.rate-limit.client.read-burst=2",
+        "products.rate-limit.client.writes-per-second=1", "products.rate-limit.client.write-burst=1"})
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+public class LoadSheddingTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("requestMappingHandlerMapping")
+    private ObjectProvider<HandlerMapping> handlerMapping;
+
+    @AfterEach
+    public void cleanUp() {
+        productRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Clients over their budget get 429 with Retry-After, reads and writes apart")
+    public void testClientBudgets() throws Exception {
+        int id = productService.save(new Product("Product", "Description", 1)).getId();
+
+        mockMvc.perform(get(id, "first")).andExpect(status().isOk());
+        mockMvc.perform(get(id, "first")).andExpect(status().isOk());
+        mockMvc.perform(get(id, "first"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        mockMvc.perform(get(id, "second")).andExpect(status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/products/" + id).header("X-Client-Id", "first"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/products/" + id).header("X-Client-Id", "first"))
+                .andExpect(status().isTooManyRequests());
+
+        Assertions.assertEquals(1, meterRegistry.get("products.requests.rejected")
+                .tag("reason", "client-rate").tag("kind", "read").counter().count());
+        Assertions.assertEquals(1, meterRegistry.get("products.requests.rejected")
+                .tag("reason", "client-rate").tag("kind", "write").counter().count());
+    }
+
+    @Test
+    @DisplayName("Clients past the most tracked share one budget")
+    public void testTrackedClientsAreCapped() {
+        RateLimiter limiter = new RateLimiter(true, 1, 1, 1, 1, 1000, 1000, 1000, 1000, 2);
+        try {
+            Assertions.assertNull(limiter.tryAcquire("first", Kind.READ));
+            Assertions.assertNull(limiter.tryAcquire("second", Kind.READ));
+            Assertions.assertNull(limiter.tryAcquire("third", Kind.READ));
+            Assertions.assertEquals(RateLimiter.Limit.CLIENT, limiter.tryAcquire("fourth", Kind.READ).getLimit());
+            Assertions.assertEquals(2, limiter.clientCount());
+        } finally {
+            limiter.close();
+        }
+    }
+
+    @Test
+    @DisplayName("A request refused by the global budget does not count against its client")
+    public void testGlobalRefusalIsNotCharged() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(true, 1, 1, 1, 1, 5, 1, 1000, 1000, 10);
+        try {
+            Assertions.assertNull(limiter.tryAcquire("first", Kind.READ));
+            Assertions.assertEquals(RateLimiter.Limit.GLOBAL, limiter.tryAcquire("second", Kind.READ).getLimit());
+            Thread.sleep(250);
+            Assertions.assertNull(limiter.tryAcquire("second", Kind.READ));
+        } finally {
+            limiter.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Only requests mapped to a streaming endpoint skip the concurrency limit")
+    public void testStreamsAreTheStreamingEndpoints() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(false, 1, 1, 1, 1, 1, 1, 1, 1, 1);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(true, 1, 1, 1, 100, () -> 0);
+        Assertions.assertTrue(concurrencyLimiter.tryAcquire());
+        LoadSheddingFilter filter = new LoadSheddingFilter(rateLimiter, concurrencyLimiter, new SimpleMeterRegistry(),
+                handlerMapping, "X-Client-Id", false);
+        try {
+            Assertions.assertEquals(200, filter(filter, "GET", "/products", MediaType.APPLICATION_NDJSON_VALUE));
+            Assertions.assertEquals(200, filter(filter, "GET", "/products/changes",
+                    MediaType.TEXT_EVENT_STREAM_VALUE));
+            Assertions.assertEquals(503, filter(filter, "GET", "/products", MediaType.APPLICATION_JSON_VALUE));
+            Assertions.assertEquals(503, filter(filter, "GET", "/products/1", MediaType.APPLICATION_NDJSON_VALUE));
+            Assertions.assertEquals(503, filter(filter, "POST", "/products", MediaType.APPLICATION_NDJSON_VALUE));
+            Assertions.assertEquals(503, filter(filter, "DELETE", "/products/1", MediaType.TEXT_EVENT_STREAM_VALUE));
+        } finally {
+            rateLimiter.close();
+        }
+    }
+
+    @Test
+    @DisplayName("A token bucket starts full, refills at its rate and tells how long until the next token")
+    public void testTokenBucket() {
+        TokenBucket bucket = new TokenBucket(2, 3, 0);
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(0, bucket.tryAcquire(0));
+        }
+        Assertions.assertEquals(SECOND / 2, bucket.tryAcquire(0));
+        Assertions.assertEquals(0, bucket.tryAcquire(SECOND / 2));
+        Assertions.assertTrue(bucket.tryAcquire(SECOND / 2) > 0);
+        Assertions.assertFalse(bucket.isFull(SECOND));
+        Assertions.assertTrue(bucket.isFull(2 * SECOND));
+
+        bucket.release(2 * SECOND);
+        Assertions.assertTrue(bucket.isFull(2 * SECOND));
+        Assertions.assertEquals(0, bucket.tryAcquire(2 * SECOND));
+        bucket.release(2 * SECOND);
+        Assertions.assertTrue(bucket.isFull(2 * SECOND));
+    }
+
+    @Test
+    @DisplayName("The concurrency limit refuses requests over it, shrinks when slow and grows back when fast")
+    public void testConcurrencyLimit() throws InterruptedException {
+        AtomicInteger waiters = new AtomicInteger();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(true, 10, 2, 12, 50, waiters::get);
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(limiter.tryAcquire());
+        }
+        Assertions.assertFalse(limiter.tryAcquire());
+
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(200));
+        Assertions.assertEquals(9, limiter.getLimit());
+        // one decrease per target latency, however many slow requests complete
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(200));
+        Assertions.assertEquals(9, limiter.getLimit());
+        Assertions.assertEquals(8, limiter.getInFlight());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(1));
+            Assertions.assertTrue(limiter.tryAcquire());
+        }
+        Assertions.assertEquals(12, limiter.getLimit());
+
+        Thread.sleep(60);
+        waiters.set(3);
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(1));
+        Assertions.assertEquals(10, limiter.getLimit());
+    }
+
+    private static int filter(LoadSheddingFilter filter, String method, String path, String accept)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.addHeader(HttpHeaders.ACCEPT, accept);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+
+    private static MockHttpServletRequestBuilder get(int id, String client) {
+        return MockMvcRequestBuilders.get("/products/" + id)
+                .header("X-Client-Id", client)
+                .accept(MediaType.APPLICATION_JSON);
+    }
+}
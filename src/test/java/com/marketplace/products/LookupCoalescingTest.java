@@ -0,0 +1,136 @@
+package com.marketplace.products;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.service.ProductService;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// without the cache every lookup reaches the database, unless it joins one in flight
+@SpringBootTest(properties = {"products.cache.max-size=0",
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+public class LookupCoalescingTest {
+
+    private static final int READERS = 16;
+
+    /**
+     * Holds the lookups by id at the repository while set.
+     */
+    private static volatile Gate gate;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @AfterEach
+    public void cleanUp() {
+        productRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Concurrent lookups of one product share one database query per burst")
+    public void testConcurrentLookupsShareOneQuery() throws Exception {
+        int id = productService.save(new Product("Popular", "Description", 1)).getId();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        for (int burst = 0; burst < 2; burst++) {
+            // the first lookup holds its query until every other reader waits for it
+            Gate burstGate = new Gate();
+            gate = burstGate;
+
+            Product[] results = new Product[READERS];
+            List<Thread> readers = new ArrayList<>();
+            for (int i = 0; i < READERS; i++) {
+                int reader = i;
+                readers.add(new Thread(() -> results[reader] = productService.findById(id)));
+            }
+            readers.forEach(Thread::start);
+            Assertions.assertTrue(burstGate.queryStarted.await(10, TimeUnit.SECONDS));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (readers.stream().filter(LookupCoalescingTest::isWaiting).count() < READERS
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            burstGate.release.countDown();
+            for (Thread reader : readers) {
+                reader.join(TimeUnit.SECONDS.toMillis(10));
+            }
+            gate = null;
+
+            Assertions.assertEquals(1, burstGate.queries.get());
+            Map<Product, Boolean> distinct = new IdentityHashMap<>();
+            for (Product result : results) {
+                Assertions.assertEquals("Popular", result.getName());
+                distinct.put(result, true);
+            }
+            // every reader gets a product of its own to change
+            Assertions.assertEquals(READERS, distinct.size());
+        }
+        Assertions.assertEquals(2, statistics.getQueryExecutionCount());
+    }
+
+    private static boolean isWaiting(Thread reader) {
+        return reader.getState() == Thread.State.WAITING || reader.getState() == Thread.State.TIMED_WAITING;
+    }
+
+    private static final class Gate {
+
+        final CountDownLatch queryStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger queries = new AtomicInteger();
+    }
+
+    @TestConfiguration
+    static class GateConfiguration {
+
+        @Bean
+        static BeanPostProcessor lookupGate() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                    if (bean instanceof RepositoryFactoryBeanSupport) {
+                        ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory ->
+                                factory.addRepositoryProxyPostProcessor((proxyFactory, repositoryInformation) ->
+                                        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+                                            Gate current = gate;
+                                            if (current != null
+                                                    && invocation.getMethod().getName().equals("findProductById")) {
+                                                current.queries.incrementAndGet();
+                                                current.queryStarted.countDown();
+                                                current.release.await(10, TimeUnit.SECONDS);
+                                            }
+                                            return invocation.proceed();
+                                        })));
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.marketplace.products;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.service.ProductService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+
+public class PersistentCatalogTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    @DisplayName("The persistent profile keeps the catalog across restarts and migrates the schema once")
+    public void testCatalogSurvivesRestart() {
+        Integer id;
+        try (ConfigurableApplicationContext context = start()) {
+            id = context.getBean(ProductService.class).save(new Product("Kept", "Description", 7)).getId();
+        }
+
+        try (ConfigurableApplicationContext context = start()) {
+            Product product = context.getBean(ProductService.class).findById(id);
+            Assertions.assertNotNull(product);
+            Assertions.assertEquals("Kept", product.getName());
+            Assertions.assertEquals(7, product.getQuantity());
+            Assertions.assertNotNull(product.getCreatedAt());
+
+            Integer migrations = context.getBean(JdbcTemplate.class).queryForObject(
+                    "select count(*) from \"flyway_schema_history\" where \"version\" is not null", Integer.class);
+            Assertions.assertEquals(2, migrations);
+        }
+    }
+
+    private ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(ProductsApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("persistent")
+                .run("--products.data-dir=" + dataDir, "--logging.level.root=WARN");
+    }
+}
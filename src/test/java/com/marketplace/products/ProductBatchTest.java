@@ -0,0 +1,193 @@
+package com.marketplace.products;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductBatchRequest;
+import com.marketplace.products.model.ProductBatchResult;
+import com.marketplace.products.model.ProductBatchResult.Status;
+import com.marketplace.products.model.ProductField;
+import com.marketplace.products.model.ProductPage;
+import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.search.ProductSearchIndex;
+import com.marketplace.products.service.ProductCache;
+import com.marketplace.products.service.ProductService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@SpringBootTest(properties = {"spring.jpa.properties.hibernate.generate_statistics=true",
+        "products.modified-since.commit-lag=0"})
+public class ProductBatchTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    public void cleanUp() {
+        productRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Batch inserts are sent as JDBC batches")
+    public void testSaveAllIsJdbcBatched() {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            products.add(new Product("Product " + i, "Description", i));
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<ProductBatchResult> results = productService.saveAll(products);
+
+        Assertions.assertEquals(1000, results.size());
+        Assertions.assertTrue(results.stream().allMatch(result -> result.getStatus() == Status.CREATED));
+        Assertions.assertEquals(1000, productRepository.count());
+        // 20 sequence calls and 20 insert batches of 50, not 1000 single inserts
+        Assertions.assertTrue(statistics.getPrepareStatementCount() < 100,
+                "prepared statements: " + statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @DisplayName("A batch rolled back leaves the cache and the search index as they were")
+    public void testRolledBackBatchLeavesCacheAndSearchAlone() {
+        Product kept = productService.save(new Product("Kept lamp", "Description", 1));
+        int removed = productService.save(new Product("Removed chair", "Description", 1)).getId();
+        Assertions.assertNotNull(productService.findById(kept.getId()));
+
+        ProductBatchRequest request = new ProductBatchRequest();
+        request.setCreate(Collections.singletonList(new Product("Phantom table", "Description", 1)));
+        kept.setName("Renamed lamp");
+        request.setUpdate(Collections.singletonList(kept));
+        request.setDelete(Collections.singletonList(removed));
+        transactionTemplate.executeWithoutResult(status -> {
+            productService.applyBatch(request);
+            status.setRollbackOnly();
+        });
+
+        Assertions.assertTrue(productService.search("phantom", 10).isEmpty());
+        Assertions.assertTrue(productService.search("renamed", 10).isEmpty());
+        Assertions.assertEquals("Kept lamp", productCache.get(kept.getId()).getName());
+        Assertions.assertEquals(List.of(removed), productService.search("chair", 10).stream()
+                .map(Product::getId).collect(Collectors.toList()));
+        Assertions.assertEquals("Removed chair", productService.findById(removed).getName());
+    }
+
+    @Test
+    @DisplayName("Missing products are reported without aborting the batch")
+    public void testPartialFailuresAreReported() {
+        Product first = productService.save(new Product("First", "Description", 1));
+        Product second = productService.save(new Product("Second", "Description", 2));
+
+        ProductBatchRequest request = new ProductBatchRequest();
+        request.setCreate(Arrays.asList(new Product("Third", "Description", 3)));
+        request.setUpdate(Arrays.asList(
+                new Product(first.getId(), "First updated", "Description", 10, 1),
+                new Product(-1, "Unknown", "Description", 10, 1)));
+        request.setDelete(Arrays.asList(second.getId(), -2));
+
+        List<ProductBatchResult> results = productService.applyBatch(request);
+
+        Assertions.assertEquals(5, results.size());
+        Assertions.assertEquals(Status.CREATED, results.get(0).getStatus());
+        Assertions.assertEquals(Status.UPDATED, results.get(1).getStatus());
+        Assertions.assertEquals(Status.NOT_FOUND, results.get(2).getStatus());
+        Assertions.assertEquals(Status.DELETED, results.get(3).getStatus());
+        Assertions.assertEquals(Status.NOT_FOUND, results.get(4).getStatus());
+        Assertions.assertEquals("First updated", productRepository.findProductById(first.getId()).getName());
+        Assertions.assertNull(productRepository.findProductById(second.getId()));
+        Assertions.assertEquals(2, productRepository.count());
+    }
+
+    @Test
+    @DisplayName("Search index is rebuilt from the database")
+    public void testBuildSearchIndex() {
+        productRepository.save(new Product("Stored directly", "Never seen by the index", 1));
+        productSearchIndex.clear();
+
+        productService.buildSearchIndex();
+
+        Assertions.assertEquals(1, productService.search("directly", 10).size());
+    }
+
+    @Test
+    @DisplayName("A page with fields selects only those columns")
+    public void testFindPageWithFields() {
+        Product first = productService.save(new Product("First", "A long description", 1));
+        productService.save(new Product("Second", "A long description", 2));
+
+        ProductPage page = productService.findPage(first.getId() - 1, 1, EnumSet.of(ProductField.NAME));
+
+        Assertions.assertEquals(1, page.getItems().size());
+        Product product = page.getItems().get(0);
+        Assertions.assertEquals(first.getId(), product.getId());
+        Assertions.assertEquals("First", product.getName());
+        Assertions.assertEquals(1, product.getVersion());
+        Assertions.assertNull(product.getDescription());
+        Assertions.assertNull(product.getQuantity());
+        Assertions.assertEquals(first.getId(), page.getNext());
+    }
+
+    @Test
+    @DisplayName("Products modified since a point in time are paged by modification time")
+    public void testFindModifiedSince() throws Exception {
+        Product first = productService.save(new Product("First", "Description", 1));
+        Product second = productService.save(new Product("Second", "Description", 2));
+        productService.save(new Product("Third", "Description", 3));
+        Thread.sleep(2);
+        Instant since = Instant.now();
+        Thread.sleep(2);
+        productService.update(new Product(first.getId(), "First updated", "Description", 1, 1));
+        productService.adjustQuantity(second.getId(), 1, true);
+
+        ProductPage page = productService.findModifiedSince(since, null, 1);
+        Assertions.assertEquals(first.getId(), page.getItems().get(0).getId());
+        Assertions.assertTrue(page.getItems().get(0).getUpdatedAt().isAfter(since));
+        Assertions.assertNotNull(page.getItems().get(0).getCreatedAt());
+
+        page = productService.findModifiedSince(page.getNextModifiedSince(), page.getNext(), 1);
+        Assertions.assertEquals(1, page.getItems().size());
+        Assertions.assertEquals(second.getId(), page.getItems().get(0).getId());
+
+        page = productService.findModifiedSince(page.getNextModifiedSince(), page.getNext(), 1);
+        Assertions.assertTrue(page.getItems().isEmpty());
+        Assertions.assertNotNull(page.getNextModifiedSince());
+
+        // the last page's cursor is where to poll from, it returns what changed since and nothing before
+        Thread.sleep(2);
+        productService.adjustQuantity(first.getId(), 1, true);
+        page = productService.findModifiedSince(page.getNextModifiedSince(), page.getNext(), 10);
+        Assertions.assertEquals(1, page.getItems().size());
+        Assertions.assertEquals(first.getId(), page.getItems().get(0).getId());
+
+        Assertions.assertEquals(3, productService.findModifiedSince(first.getCreatedAt(), null, 10).getItems().size());
+    }
+}
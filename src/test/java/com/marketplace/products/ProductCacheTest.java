@@ -0,0 +1,75 @@
+package com.marketplace.products;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.service.ProductCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+public class ProductCacheTest {
+
+    @Test
+    @DisplayName("Cached product is a copy that callers cannot corrupt")
+    public void testCachedProductIsCopied() {
+        ProductCache cache = new ProductCache(10, Duration.ofMinutes(1));
+        Product product = new Product(1, "Product", "Description", 10, 1);
+
+        cache.cache(product);
+        product.setName("Changed");
+        cache.get(1).setName("Changed again");
+
+        Assertions.assertEquals("Product", cache.get(1).getName());
+        Assertions.assertEquals(2, cache.hitCount());
+    }
+
+    @Test
+    @DisplayName("A stale read never replaces a newer written version")
+    public void testStaleReadDoesNotReplaceNewerVersion() {
+        ProductCache cache = new ProductCache(10, Duration.ofMinutes(1));
+
+        cache.update(new Product(1, "New name", "Description", 10, 2));
+        cache.cache(new Product(1, "Old name", "Description", 10, 1));
+        cache.update(new Product(1, "Older write", "Description", 10, 1));
+
+        Assertions.assertEquals("New name", cache.get(1).getName());
+    }
+
+    @Test
+    @DisplayName("A read racing a delete cannot resurrect the product")
+    public void testEvictedProductIsNotResurrected() {
+        ProductCache cache = new ProductCache(10, Duration.ofMinutes(1));
+
+        cache.update(new Product(1, "Product", "Description", 10, 1));
+        cache.evict(1);
+        cache.cache(new Product(1, "Product", "Description", 10, 1));
+
+        Assertions.assertNull(cache.get(1));
+        Assertions.assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    @DisplayName("Expired entries are misses")
+    public void testExpiredEntryIsMiss() throws InterruptedException {
+        ProductCache cache = new ProductCache(10, Duration.ofMillis(1));
+
+        cache.cache(new Product(1, "Product", "Description", 10, 1));
+        Thread.sleep(5);
+
+        Assertions.assertNull(cache.get(1));
+    }
+
+    @Test
+    @DisplayName("Cache never grows past its maximum size")
+    public void testCacheIsBounded() {
+        ProductCache cache = new ProductCache(3, Duration.ofMinutes(1));
+
+        for (int id = 1; id <= 10; id++) {
+            cache.cache(new Product(id, "Product " + id, "Description", 10, 1));
+        }
+
+        Assertions.assertEquals(3, cache.size());
+        Assertions.assertEquals(7, cache.evictionCount());
+    }
+}
@@ -0,0 +1,180 @@
+package com.marketplace.products;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductChange;
+import com.marketplace.products.model.ProductChange.Type;
+import com.marketplace.products.model.ProductChangePage;
+import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.service.ProductChangeFeed;
+import com.marketplace.products.service.ProductChangeWriterLease;
+import com.marketplace.products.service.ProductService;
+import com.marketplace.products.snapshot.ProductReplica;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ProductChangeFeedTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductReplica productReplica;
+
+    private long start;
+
+    @BeforeEach
+    public void skipEarlierChanges() {
+        start = productChangeFeed.changesAfter(0, Integer.MAX_VALUE).getNext();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        productRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Save, update and delete are logged in order, a refused update is not")
+    public void testChangesAreLoggedInOrder() {
+        Product product = productService.save(new Product("Logged", "Description", 1));
+        productService.update(new Product(product.getId(), "Logged again", "Description", 2, 1));
+        Assertions.assertThrows(OptimisticLockingFailureException.class,
+                () -> productService.update(new Product(product.getId(), "Stale", "Description", 3, 1)));
+        productService.delete(product.getId());
+
+        List<ProductChange> changes = productChangeFeed.changesAfter(start, 10).getChanges();
+
+        Assertions.assertEquals(3, changes.size());
+        Assertions.assertEquals(Type.CREATED, changes.get(0).getType());
+        Assertions.assertEquals(Type.UPDATED, changes.get(1).getType());
+        Assertions.assertEquals("Logged again", changes.get(1).getName());
+        Assertions.assertEquals(2, changes.get(1).getVersion());
+        Assertions.assertEquals(Type.DELETED, changes.get(2).getType());
+        Assertions.assertEquals(product.getId(), changes.get(2).getProductId());
+    }
+
+    @Test
+    @DisplayName("A second instance does not start while the change log has a writer")
+    public void testSecondWriterIsRefused() {
+        jdbcTemplate.update("update product_change_writer set instance = 'another', renewed_at = ? where id = 1",
+                Timestamp.from(Instant.now()));
+        try {
+            ProductChangeWriterLease lease = new ProductChangeWriterLease(jdbcTemplate, productReplica, 30000, 10000);
+            Assertions.assertThrows(IllegalStateException.class, lease::start);
+            Assertions.assertFalse(lease.isHeld());
+        } finally {
+            jdbcTemplate.update("update product_change_writer set instance = null, renewed_at = null where id = 1");
+        }
+    }
+
+    @Test
+    @DisplayName("POST /products with the id of an existing product creates a new one, the existing one is kept")
+    public void testPostIgnoresCarriedId() throws Exception {
+        Product existing = productService.save(new Product("Existing", "Description", 5));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/products")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\":" + existing.getId() + ",\"name\":\"Posted\",\"description\":\"Description\","
+                        + "\"quantity\":1,\"version\":1}"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id", not(existing.getId())))
+                .andExpect(jsonPath("$.name", is("Posted")));
+
+        Assertions.assertEquals("Existing", productRepository.findProductById(existing.getId()).getName());
+        List<ProductChange> changes = productChangeFeed.changesAfter(start, 10).getChanges();
+        Assertions.assertEquals(2, changes.size());
+        Assertions.assertNotEquals(changes.get(0).getProductId(), changes.get(1).getProductId());
+    }
+
+    @Test
+    @DisplayName("A change committed after one still in flight is held back until the first commits")
+    public void testFeedStopsBeforeUncommittedChanges() throws Exception {
+        CountDownLatch saved = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        CompletableFuture<Void> slowTransaction = CompletableFuture.runAsync(() ->
+                transactionTemplate.executeWithoutResult(status -> {
+                    productService.save(new Product("Slow", "Description", 1));
+                    saved.countDown();
+                    try {
+                        commit.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        Assertions.assertTrue(saved.await(10, TimeUnit.SECONDS));
+
+        productService.save(new Product("Fast", "Description", 1));
+        ProductChangePage page = productChangeFeed.changesAfter(start, 10);
+        Assertions.assertTrue(page.getChanges().isEmpty());
+        Assertions.assertEquals(start, page.getNext());
+
+        commit.countDown();
+        slowTransaction.get(10, TimeUnit.SECONDS);
+        List<ProductChange> changes = productChangeFeed.changesAfter(start, 10).getChanges();
+        Assertions.assertEquals(2, changes.size());
+        Assertions.assertEquals("Slow", changes.get(0).getName());
+        Assertions.assertEquals("Fast", changes.get(1).getName());
+    }
+
+    @Test
+    @DisplayName("Long poll returns once a change is committed - GET /products/changes?wait=10")
+    public void testLongPollIsWokenUpByChange() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/products/changes")
+                .param("after", Long.toString(start))
+                .param("wait", "10"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        productService.save(new Product("Awaited", "Description", 1));
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changes", hasSize(1)))
+                .andExpect(jsonPath("$.changes[0].type", is("CREATED")))
+                .andExpect(jsonPath("$.changes[0].name", is("Awaited")));
+    }
+}
@@ -0,0 +1,146 @@
+package com.marketplace.products;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.StockReservation;
+import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.service.InsufficientStockException;
+import com.marketplace.products.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SpringBootTest
+public class ProductConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 50;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @AfterEach
+    public void cleanUp() {
+        productRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Concurrent read-modify-write of one product never loses an update")
+    public void testConcurrentUpdatesOfOneProduct() throws Exception {
+        Integer id = productService.save(new Product("Contended", "Description", 0)).getId();
+        AtomicInteger successes = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    Product product = productService.findById(id);
+                    product.setQuantity(product.getQuantity() + 1);
+                    try {
+                        productService.update(product);
+                        successes.incrementAndGet();
+                    } catch (OptimisticLockingFailureException e) {
+                        conflicts.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        Product product = productRepository.findProductById(id);
+        Assertions.assertEquals(THREADS * ATTEMPTS_PER_THREAD, successes.get() + conflicts.get());
+        Assertions.assertTrue(successes.get() > 0);
+        // every successful increment is kept and bumped the version exactly once
+        Assertions.assertEquals(successes.get(), product.getQuantity());
+        Assertions.assertEquals(1 + successes.get(), product.getVersion());
+    }
+
+    @Test
+    @DisplayName("Concurrent stock decrements never oversell")
+    public void testConcurrentDecrementsNeverOversell() throws Exception {
+        Integer id = productService.save(new Product("Flash sale", "Description", 100)).getId();
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10; i++) {
+                    try {
+                        productService.adjustQuantity(id, -1, true);
+                        sold.incrementAndGet();
+                    } catch (InsufficientStockException e) {
+                        refused.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        Assertions.assertEquals(100, sold.get());
+        Assertions.assertEquals(THREADS * 10 - 100, refused.get());
+        Assertions.assertEquals(0, productRepository.findProductById(id).getQuantity());
+    }
+
+    @Test
+    @DisplayName("Overlapping reservations are all or nothing and do not deadlock")
+    public void testOverlappingReservations() throws Exception {
+        Integer first = productService.save(new Product("First", "Description", 1000)).getId();
+        Integer second = productService.save(new Product("Second", "Description", 1000)).getId();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            boolean reversed = t % 2 == 0;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10; i++) {
+                    productService.reserve(reversed
+                            ? Arrays.asList(new StockReservation(second, 1), new StockReservation(first, 2))
+                            : Arrays.asList(new StockReservation(first, 2), new StockReservation(second, 1)));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Assertions.assertEquals(1000 - THREADS * 10 * 2, productRepository.findProductById(first).getQuantity());
+        Assertions.assertEquals(1000 - THREADS * 10, productRepository.findProductById(second).getQuantity());
+
+        Assertions.assertThrows(InsufficientStockException.class, () -> productService.reserve(Arrays.asList(
+                new StockReservation(first, 1), new StockReservation(second, 10_000))));
+        Assertions.assertEquals(1000 - THREADS * 10 * 2, productRepository.findProductById(first).getQuantity());
+    }
+}
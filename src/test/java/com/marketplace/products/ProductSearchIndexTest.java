@@ -0,0 +1,79 @@
+package com.marketplace.products;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.search.ProductSearchIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ProductSearchIndexTest {
+
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new ProductSearchIndex(true);
+        index.index(new Product(1, "Red coffee mug", "Ceramic, 300 ml", 10, 1));
+        index.index(new Product(2, "Coffee grinder", "Burr grinder for espresso and filter coffee", 5, 1));
+        index.index(new Product(3, "Tea cup", "Porcelain cup, pairs well with a coffee table", 7, 1));
+        index.index(new Product(4, "Żółty kubek", "Kubek ceramiczny", 3, 1));
+    }
+
+    @Test
+    @DisplayName("Name matches rank above description matches")
+    public void testRanking() {
+        Assertions.assertEquals(List.of(1, 2, 3), ids(index.search("coffee", 10)));
+    }
+
+    @Test
+    @DisplayName("Every term has to match, the last one as a prefix")
+    public void testAllTermsWithPrefix() {
+        Assertions.assertEquals(List.of(2), ids(index.search("coffee gri", 10)));
+        Assertions.assertEquals(List.of(1, 4), ids(index.search("ceramic", 10)));
+        Assertions.assertTrue(index.search("coffee zzz", 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Case and accents are ignored")
+    public void testNormalization() {
+        Assertions.assertEquals(List.of(4), ids(index.search("ZOLTY", 10)));
+    }
+
+    @Test
+    @DisplayName("Re-indexing replaces old terms and removal drops the product")
+    public void testIncrementalUpdates() {
+        index.index(new Product(1, "Blue tea mug", "Ceramic, 300 ml", 10, 2));
+        Assertions.assertEquals(List.of(2, 3), ids(index.search("coffee", 10)));
+        Assertions.assertEquals(List.of(1, 3), ids(index.search("tea", 10)));
+
+        index.remove(3);
+        Assertions.assertEquals(List.of(1), ids(index.search("tea", 10)));
+        Assertions.assertEquals(3, index.size());
+    }
+
+    @Test
+    @DisplayName("Older versions and removed products are not indexed again")
+    public void testStaleWritesAreIgnored() {
+        index.index(new Product(1, "Blue tea mug", "Ceramic, 300 ml", 10, 3));
+        index.index(new Product(1, "Red coffee mug", "Ceramic, 300 ml", 10, 2));
+        Assertions.assertEquals(List.of(1), ids(index.search("blue", 10)));
+
+        index.remove(2);
+        index.index(new Product(2, "Coffee grinder", "Burr grinder for espresso and filter coffee", 5, 1));
+        Assertions.assertTrue(index.search("grinder", 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Results are limited")
+    public void testLimit() {
+        Assertions.assertEquals(List.of(1), ids(index.search("coffee", 1)));
+    }
+
+    private static List<Integer> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toList());
+    }
+}
@@ -1,22 +1,37 @@
 package com.marketplace.products;
 
 import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductLookupResult;
+import com.marketplace.products.model.ProductPage;
 import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.search.ProductSearchIndex;
+import com.marketplace.products.service.ProductCache;
 import com.marketplace.products.service.ProductService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.util.AssertionErrors;
 
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
@@ -25,9 +40,24 @@ public class ProductServiceTest {
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
     @MockBean
     private ProductRepository productRepository;
 
+    @BeforeEach
+    public void clearCache() {
+        productCache.clear();
+        productSearchIndex.clear();
+    }
+
     @Test
     @DisplayName("Find product with id successfuly")
     public void testFindProductById() {
@@ -51,44 +81,182 @@ public class ProductServiceTest {
         Assertions.assertNull(foundProduct);
     }
 
+    @Test
+    @DisplayName("Find product with id twice hits the repository once")
+    public void testFindProductByIdIsCached() {
+        Product mockProduct = new Product(1, "Product", "Description", 10, 1);
+
+        doReturn(mockProduct).when(productRepository).findProductById(1);
+
+        productService.findById(1);
+        Product cachedProduct = productService.findById(1);
+
+        Assertions.assertEquals("Product", cachedProduct.getName());
+        verify(productRepository, times(1)).findProductById(1);
+        Assertions.assertTrue(meterRegistry.get("products.cache.requests").tag("result", "hit").functionCounter().count() >= 1);
+    }
+
+    @Test
+    @DisplayName("Updated product is served from cache without re-reading it")
+    public void testUpdateRefreshesCache() {
+        Product existingProduct = new Product(1, "Product", "Description", 10, 1);
+
+        doReturn(existingProduct).when(productRepository).findProductById(1);
+        doReturn(1).when(productRepository).updateIfVersionMatches(
+                eq(1), eq(1), eq("New Name"), eq("Description"), eq(10), any());
+
+        productService.findById(1);
+        productService.update(new Product(1, "New Name", "Description", 10, 1));
+        Product foundProduct = productService.findById(1);
+
+        Assertions.assertEquals("New Name", foundProduct.getName());
+        Assertions.assertEquals(2, foundProduct.getVersion());
+        verify(productRepository, times(1)).findProductById(1);
+    }
+
+    @Test
+    @DisplayName("Deleted product is evicted from cache")
+    public void testDeleteEvictsCache() {
+        Product existingProduct = new Product(1, "Product", "Description", 10, 1);
+
+        doReturn(existingProduct).when(productRepository).findProductById(1);
+        productService.findById(1);
+        doReturn(1).when(productRepository).deleteProductById(1);
+        productService.delete(1);
+        doReturn(null).when(productRepository).findProductById(1);
+
+        Assertions.assertNull(productService.findById(1));
+    }
+
+    @Test
+    @DisplayName("Saved, updated and deleted products are kept in sync in the search index")
+    public void testSearchIndexFollowsWrites() {
+        Product newProduct = new Product("Coffee mug", "Ceramic", 10);
+        doReturn(new Product(1, "Coffee mug", "Ceramic", 10, 1)).when(productRepository).save(newProduct);
+        productService.save(newProduct);
+        Assertions.assertEquals(1, productService.search("coff", 10).size());
+
+        doReturn(1).when(productRepository).updateIfVersionMatches(
+                eq(1), eq(1), eq("Tea mug"), eq("Ceramic"), eq(10), any());
+        productService.update(new Product(1, "Tea mug", "Ceramic", 10, 1));
+        Assertions.assertTrue(productService.search("coffee", 10).isEmpty());
+        Assertions.assertEquals(2, productService.search("tea", 10).get(0).getVersion());
+
+        doReturn(1).when(productRepository).deleteProductById(1);
+        productService.delete(1);
+        Assertions.assertTrue(productService.search("tea", 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Look up many products: cache hits skip the query, results keep request order")
+    public void testFindAllByIdInRequestOrder() {
+        doReturn(new Product(2, "2nd Product", "Description", 10, 1)).when(productRepository).findProductById(2);
+        productService.findById(2);
+        doReturn(Arrays.asList(new Product(1, "1st Product", "Description", 10, 1),
+                new Product(3, "3rd Product", "Description", 10, 1)))
+                .when(productRepository).findAllById(Arrays.asList(3, 1, 7));
+
+        List<ProductLookupResult> results = productService.findAllById(Arrays.asList(3, 2, 1, 7, 3));
+
+        Assertions.assertEquals(5, results.size());
+        Assertions.assertEquals("3rd Product", results.get(0).getProduct().getName());
+        Assertions.assertEquals("2nd Product", results.get(1).getProduct().getName());
+        Assertions.assertEquals("1st Product", results.get(2).getProduct().getName());
+        Assertions.assertFalse(results.get(3).isFound());
+        Assertions.assertEquals(7, results.get(3).getId());
+        Assertions.assertTrue(results.get(4).isFound());
+        verify(productRepository, times(1)).findAllById(Arrays.asList(3, 1, 7));
+
+        // the products just read are cached, a second lookup of them needs no query
+        productService.findAllById(Arrays.asList(1, 3));
+        verify(productRepository, never()).findAllById(Collections.singletonList(1));
+        verify(productRepository, times(1)).findAllById(Arrays.asList(3, 1, 7));
+    }
+
     @Test
     @DisplayName("Find all products")
     public void testFindAllProducts() {
         Product firstProduct = new Product(1, "1st Product", "Description", 10, 1);
         Product secondProduct = new Product(2, "2st Product", "Description", 10, 1);
 
-        doReturn(Arrays.asList(firstProduct, secondProduct)).when(productRepository).findAll();
+        doReturn(Stream.of(firstProduct, secondProduct)).when(productRepository).streamAllByOrderByIdAsc();
 
-        Iterable<Product> allProducts = productService.findAll();
+        List<Product> allProducts = productService.findAll();
 
-        Assertions.assertEquals(2, ((Collection<?>) allProducts).size());
+        Assertions.assertEquals(2, allProducts.size());
     }
 
     @Test
-    @DisplayName("Save a new product succesfully")
+    @DisplayName("Find a page of products with a cursor to the next one")
+    public void testFindPageWithNextCursor() {
+        Product firstProduct = new Product(1, "1st Product", "Description", 10, 1);
+        Product secondProduct = new Product(2, "2nd Product", "Description", 10, 1);
+        Product thirdProduct = new Product(3, "3rd Product", "Description", 10, 1);
+
+        doReturn(Arrays.asList(firstProduct, secondProduct, thirdProduct))
+                .when(productRepository).findByIdGreaterThanOrderByIdAsc(0, PageRequest.of(0, 3));
+
+        ProductPage page = productService.findPage(null, 2);
+
+        Assertions.assertEquals(2, page.getItems().size());
+        Assertions.assertEquals(2, page.getNext());
+    }
+
+    @Test
+    @DisplayName("Find the last page of products")
+    public void testFindLastPage() {
+        Product lastProduct = new Product(3, "3rd Product", "Description", 10, 1);
+
+        doReturn(Arrays.asList(lastProduct))
+                .when(productRepository).findByIdGreaterThanOrderByIdAsc(2, PageRequest.of(0, 3));
+
+        ProductPage page = productService.findPage(2, 2);
+
+        Assertions.assertEquals(1, page.getItems().size());
+        Assertions.assertNull(page.getNext());
+    }
+
+    @Test
+    @DisplayName("Save a new product succesfully, an id carried in is not kept")
     public void testSuccefulProduct() {
-        Product newProduct = new Product(1, "New product", "Opis", 10, 1);
+        Product newProduct = new Product(7, "New product", "Opis", 10, 3);
 
-        doReturn(newProduct).when(productRepository).save(newProduct);
+        doReturn(new Product(1, "New product", "Opis", 10, 1)).when(productRepository).save(newProduct);
 
         Product saveProduct = productService.save(newProduct);
 
         Assertions.assertSame("New product", newProduct.getName());
-        Assertions.assertEquals(1, newProduct.getId());
+        Assertions.assertNull(newProduct.getId());
+        Assertions.assertEquals(1, newProduct.getVersion());
+        Assertions.assertEquals(1, saveProduct.getId());
 
     }
 
     @Test
     @DisplayName("Update an existing product successfuly")
     public void testUpdatingProductSuccessfuly() {
-        Product existingProduct = new Product(1, "Product", "Description", 10, 1);
-        Product updateProduct = new Product(1, "New Name", "Description", 10, 2);
+        Product updateProduct = new Product(1, "New Name", "Description", 10, 1);
 
-        doReturn(existingProduct).when(productRepository).findProductById(1);
-        doReturn(updateProduct).when(productRepository).save(existingProduct);
+        doReturn(1).when(productRepository).updateIfVersionMatches(
+                eq(1), eq(1), eq("New Name"), eq("Description"), eq(10), any());
+
+        Product update = productService.update(updateProduct);
+
+        Assertions.assertEquals("New Name", update.getName());
+        Assertions.assertEquals(2, update.getVersion());
+        verify(productRepository, never()).findProductById(1);
+    }
+
+    @Test
+    @DisplayName("Update a product whatever its version")
+    public void testUpdateAnyVersion() {
+        doReturn(new Product(1, "Product", "Description", 10, 4)).when(productRepository).findProductById(1);
+        doReturn(1).when(productRepository).updateIfVersionMatches(
+                eq(1), eq(4), eq("New Name"), eq("Description"), eq(10), any());
 
-        Product update = productService.update(existingProduct);
+        Product update = productService.updateAnyVersion(new Product(1, "New Name", "Description", 10, null));
 
+        Assertions.assertEquals(5, update.getVersion());
         Assertions.assertEquals("New Name", update.getName());
     }
 
@@ -97,7 +265,9 @@ public class ProductServiceTest {
     public void testFailToUpdateExistingProduct(){
         Product mockProduct = new Product(1, "Product", "Description", 10, 1);
 
-        doReturn(null).when(productRepository).findProductById(1);
+        doReturn(0).when(productRepository).updateIfVersionMatches(
+                eq(1), eq(1), eq("Product"), eq("Description"), eq(10), any());
+        doReturn(false).when(productRepository).existsById(1);
 
         Product updateProduct = productService.update(mockProduct);
 
@@ -106,4 +276,19 @@ public class ProductServiceTest {
 
     }
 
+    @Test
+    @DisplayName("Fail to update a product changed in the meantime")
+    public void testVersionConflictWhileUpdating() {
+        Product staleProduct = new Product(1, "Product", "Description", 10, 1);
+
+        doReturn(0).when(productRepository).updateIfVersionMatches(
+                eq(1), eq(1), eq("Product"), eq("Description"), eq(10), any());
+        doReturn(true).when(productRepository).existsById(1);
+
+        double conflicts = meterRegistry.counter("products.update.conflicts").count();
+
+        Assertions.assertThrows(OptimisticLockingFailureException.class, () -> productService.update(staleProduct));
+        Assertions.assertEquals(conflicts + 1, meterRegistry.counter("products.update.conflicts").count());
+    }
+
 }
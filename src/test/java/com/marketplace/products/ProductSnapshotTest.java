@@ -0,0 +1,193 @@
+package com.marketplace.products;
+
+import com.marketplace.products.inventory.InventoryStatistics;
+import com.marketplace.products.model.Product;
+import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.service.ProductCache;
+import com.marketplace.products.service.ProductService;
+import com.marketplace.products.snapshot.ProductSnapshot;
+import com.marketplace.products.snapshot.ProductSnapshotService;
+import com.marketplace.products.web.ReadOnlyReplicaFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "products.snapshot.warm-cache=true")
+public class ProductSnapshotTest {
+
+    @TempDir
+    static Path dataDir;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductSnapshotService productSnapshotService;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @DynamicPropertySource
+    static void snapshotFile(DynamicPropertyRegistry registry) {
+        registry.add("products.snapshot.file", () -> dataDir.resolve("products.snapshot").toString());
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        productRepository.deleteAll();
+        productCache.clear();
+    }
+
+    @Test
+    @DisplayName("Products are read back by id and by page from the mapped file")
+    public void testWriteAndRead() throws Exception {
+        Path file = dataDir.resolve("round-trip.snapshot");
+        Product full = new Product(3, "Kaffeemühle", "Zażółć gęślą jaźń", 7, 2);
+        full.setCreatedAt(Instant.parse("2026-01-01T10:00:00.123456Z"));
+        full.setUpdatedAt(Instant.parse("2026-01-02T10:00:00Z"));
+        try (ProductSnapshot.Writer writer = ProductSnapshot.writer(file, 42)) {
+            writer.add(new Product(1, "Sparse", null, null, 1));
+            writer.add(full);
+            writer.add(new Product(8, "Last", "Description", 0, 1));
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> writer.add(new Product(5, "Out of order", "Description", 1, 1)));
+            writer.commit();
+        }
+
+        ProductSnapshot snapshot = ProductSnapshot.open(file);
+        Assertions.assertEquals(3, snapshot.size());
+        Assertions.assertEquals(42, snapshot.getChangeCursor());
+
+        Product read = snapshot.find(3);
+        Assertions.assertEquals("Kaffeemühle", read.getName());
+        Assertions.assertEquals("Zażółć gęślą jaźń", read.getDescription());
+        Assertions.assertEquals(7, read.getQuantity());
+        Assertions.assertEquals(2, read.getVersion());
+        Assertions.assertEquals(full.getCreatedAt(), read.getCreatedAt());
+        Assertions.assertEquals(full.getUpdatedAt(), read.getUpdatedAt());
+        Assertions.assertNull(snapshot.find(1).getQuantity());
+        Assertions.assertNull(snapshot.find(1).getDescription());
+        Assertions.assertNull(snapshot.find(2));
+        Assertions.assertNull(snapshot.find(9));
+
+        List<Product> page = snapshot.page(1, 5);
+        Assertions.assertEquals(2, page.size());
+        Assertions.assertEquals(3, page.get(0).getId());
+        Assertions.assertEquals(8, page.get(1).getId());
+        Assertions.assertTrue(snapshot.page(8, 5).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Warming the cache loads the snapshot and replays the changes logged after it")
+    public void testWarmCacheCatchesUpWithLaterChanges() throws Exception {
+        Product kept = productService.save(new Product("Kept", "Description", 1));
+        Product updated = productService.save(new Product("Updated", "Description", 2));
+        Product deleted = productService.save(new Product("Deleted", "Description", 3));
+        Assertions.assertEquals(3, productSnapshotService.write().size());
+
+        productService.update(new Product(updated.getId(), "Updated later", "Description", 5, 1));
+        productService.delete(deleted.getId());
+        Product created = productService.save(new Product("Created later", "Description", 4));
+        productCache.clear();
+
+        productSnapshotService.warmCache();
+
+        Assertions.assertEquals("Kept", productCache.get(kept.getId()).getName());
+        Product cachedUpdate = productCache.get(updated.getId());
+        Assertions.assertEquals("Updated later", cachedUpdate.getName());
+        Assertions.assertEquals(2, cachedUpdate.getVersion());
+        Assertions.assertNull(productCache.get(deleted.getId()));
+        Assertions.assertEquals("Created later", productCache.get(created.getId()).getName());
+    }
+
+    @Test
+    @DisplayName("A replica serves reads from the snapshot alone and refuses writes")
+    public void testReplicaServesSnapshot() throws Exception {
+        Product product = productService.save(new Product("Replicated", "Description", 9));
+        productService.save(new Product("Second", "Description", 1));
+        productSnapshotService.write();
+
+        // a database of its own, empty: whatever the replica returns comes from the file
+        try (ConfigurableApplicationContext replica = new SpringApplicationBuilder(ProductsApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .run("--products.snapshot.replica=true",
+                        "--products.snapshot.file=" + productSnapshotService.getFile(),
+                        "--server.port=0", "--logging.level.root=WARN")) {
+            ProductService replicaService = replica.getBean(ProductService.class);
+            Assertions.assertEquals("Replicated", replicaService.findById(product.getId()).getName());
+            Assertions.assertEquals(2, replicaService.findPage(null, 10).getItems().size());
+
+            MockMvc mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) replica)
+                    .addFilters(replica.getBean(ReadOnlyReplicaFilter.class))
+                    .build();
+            mockMvc.perform(MockMvcRequestBuilders.get("/products/{id}", product.getId()))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.name", is("Replicated")));
+            mockMvc.perform(MockMvcRequestBuilders.post("/products:lookup")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("[" + product.getId() + "]"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[0].found", is(true)));
+            mockMvc.perform(MockMvcRequestBuilders.post("/products")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"name\":\"Refused\",\"description\":\"Description\",\"quantity\":1}"))
+                    .andExpect(status().isMethodNotAllowed());
+        }
+    }
+
+    @Test
+    @DisplayName("Reloading a replica rebuilds its search index and inventory statistics from the new snapshot")
+    public void testReplicaReloadRebuildsIndexAndStats() throws Exception {
+        Product kept = productService.save(new Product("Lantern", "Description", 9));
+        Product removed = productService.save(new Product("Compass", "Description", 1));
+        productSnapshotService.write();
+
+        try (ConfigurableApplicationContext replica = new SpringApplicationBuilder(ProductsApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--products.snapshot.replica=true",
+                        "--products.snapshot.file=" + productSnapshotService.getFile(),
+                        "--logging.level.root=WARN")) {
+            ProductService replicaService = replica.getBean(ProductService.class);
+            InventoryStatistics replicaStatistics = replica.getBean(InventoryStatistics.class);
+            Assertions.assertEquals(1, replicaService.search("compass", 10).size());
+            Assertions.assertEquals(10, replicaStatistics.stats(0).getTotalQuantity());
+
+            kept.setQuantity(4);
+            productService.update(kept);
+            productService.delete(removed.getId());
+            productService.save(new Product("Sextant", "Description", 2));
+            productSnapshotService.write();
+            replica.getBean(ProductSnapshotService.class).reload();
+
+            Assertions.assertTrue(replicaService.search("compass", 10).isEmpty());
+            Assertions.assertEquals(1, replicaService.search("sextant", 10).size());
+            Assertions.assertEquals(2, replicaStatistics.stats(0).getCount());
+            Assertions.assertEquals(6, replicaStatistics.stats(0).getTotalQuantity());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.marketplace.products;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.service.ProductCache;
+import com.marketplace.products.service.ProductService;
+import com.marketplace.products.writebehind.ProductWriteBehind;
+import com.marketplace.products.writebehind.UpdateJournal;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// flushed by the tests themselves
+@SpringBootTest(properties = {"products.write-behind.enabled=true", "products.write-behind.max-pending=2",
+        "products.write-behind.flush-interval=3600000"})
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+public class ProductWriteBehindTest {
+
+    @TempDir
+    static Path journalDir;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductWriteBehind productWriteBehind;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void journalDir(DynamicPropertyRegistry registry) {
+        registry.add("products.write-behind.journal-dir", () -> journalDir.resolve("journal").toString());
+    }
+
+    @AfterEach
+    public void cleanUp() throws Exception {
+        productWriteBehind.flush();
+        productRepository.deleteAll();
+        productCache.clear();
+    }
+
+    @Test
+    @DisplayName("Updates with If-Match: * are accepted, coalesced per product and written in one batch")
+    public void testUpdatesAreCoalesced() throws Exception {
+        Integer id = productService.save(new Product("Original", "Description", 1)).getId();
+
+        for (int i = 1; i <= 5; i++) {
+            putBehind(id, "Update " + i, i)
+                    .andExpect(status().isAccepted())
+                    .andExpect(header().string(HttpHeaders.LOCATION, "/products/" + id));
+        }
+        Assertions.assertEquals(1, productWriteBehind.pendingCount());
+        Assertions.assertEquals("Original", productRepository.findProductById(id).getName());
+
+        Assertions.assertEquals(1, productWriteBehind.flush());
+        Product written = productRepository.findProductById(id);
+        Assertions.assertEquals("Update 5", written.getName());
+        Assertions.assertEquals(5, written.getQuantity());
+        Assertions.assertEquals(2, written.getVersion());
+        Assertions.assertEquals("Update 5", productService.findById(id).getName());
+        Assertions.assertEquals(5.0, meterRegistry.get("products.write-behind.coalescing.ratio").gauge().value());
+
+        // versioned updates still go through at once
+        mockMvc.perform(MockMvcRequestBuilders.put("/products/{id}", id)
+                .header(HttpHeaders.IF_MATCH, "2")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"Versioned\",\"description\":\"Description\",\"quantity\":1}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+    }
+
+    @Test
+    @DisplayName("Updates of further products are refused with 503 while the queue is full")
+    public void testFullQueueRefusesUpdates() throws Exception {
+        Integer first = productService.save(new Product("First", "Description", 1)).getId();
+        Integer second = productService.save(new Product("Second", "Description", 1)).getId();
+        Integer third = productService.save(new Product("Third", "Description", 1)).getId();
+
+        putBehind(first, "First", 2).andExpect(status().isAccepted());
+        putBehind(second, "Second", 2).andExpect(status().isAccepted());
+        putBehind(third, "Third", 2)
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+        // a product already waiting is coalesced, not refused
+        putBehind(first, "First again", 3).andExpect(status().isAccepted());
+
+        productService.delete(second);
+        Assertions.assertEquals(1, productWriteBehind.flush());
+        putBehind(third, "Third", 2).andExpect(status().isAccepted());
+    }
+
+    @Test
+    @DisplayName("The journal gives back the updates of earlier runs and stops at a torn record")
+    public void testJournalRecovery() throws Exception {
+        Path dir = journalDir.resolve("recovery");
+        try (UpdateJournal journal = new UpdateJournal(dir, true)) {
+            journal.sync(journal.append(new Product(1, "Zażółć", null, null, null)));
+            journal.sync(journal.append(new Product(2, "Second", "Description", 7, null)));
+            journal.append(new Product(3, "Torn", "Description", 1, null));
+        }
+        Path segment = segments(dir).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (UpdateJournal journal = new UpdateJournal(dir, true)) {
+            UpdateJournal.Recovery recovery = journal.recover();
+            Assertions.assertEquals(List.of(segment), recovery.getSegments());
+            List<Product> products = recovery.getProducts();
+            Assertions.assertEquals(2, products.size());
+            Assertions.assertEquals("Zażółć", products.get(0).getName());
+            Assertions.assertNull(products.get(0).getDescription());
+            Assertions.assertNull(products.get(0).getQuantity());
+            Assertions.assertEquals(7, products.get(1).getQuantity());
+
+            journal.delete(recovery.getSegments());
+        }
+        Assertions.assertEquals(1, segments(dir).size());
+        Assertions.assertNotEquals(segment, segments(dir).get(0));
+    }
+
+    private ResultActions putBehind(Integer id, String name, int quantity)
+            throws Exception {
+        return mockMvc.perform(MockMvcRequestBuilders.put("/products/{id}", id)
+                .header(HttpHeaders.IF_MATCH, "*")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"" + name + "\",\"description\":\"Description\",\"quantity\":" + quantity + "}"));
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -1,25 +1,52 @@
 package com.marketplace.products;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductBatchResult;
+import com.marketplace.products.model.ProductBatchResult.Operation;
+import com.marketplace.products.model.ProductBatchResult.Status;
+import com.marketplace.products.model.ProductField;
+import com.marketplace.products.model.ProductLookupResult;
+import com.marketplace.products.model.ProductPage;
+import com.marketplace.products.model.StockLevel;
+import com.marketplace.products.service.InsufficientStockException;
 import com.marketplace.products.service.ProductService;
-import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -27,6 +54,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
 @AutoConfigureMockMvc
+@AutoConfigureMetrics
 public class ProductsControllerTest {
 
     @MockBean
@@ -64,6 +92,221 @@ public class ProductsControllerTest {
 
     }
 
+    @Test
+    @DisplayName("Search products - GET /products/search?q=mug")
+    public void testSearchProducts() throws Exception {
+        doReturn(Arrays.asList(new Product(1, "Coffee mug", "Ceramic", 5, 1)))
+                .when(productService).search("mug", 20);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/search").param("q", "mug"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("Coffee mug")));
+    }
+
+    @Test
+    @DisplayName("Product not modified - GET /products/1 with If-None-Match")
+    public void testGetProductNotModified() throws Exception {
+        Product mockProduct = new Product(1, "My product", "Details of my product", 5, 3);
+
+        doReturn(mockProduct).when(productService).findById(1);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/{id}", 1)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"2\", \"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    @DisplayName("Product modified since - GET /products/1 with stale If-None-Match")
+    public void testGetProductModified() throws Exception {
+        Product mockProduct = new Product(1, "My product", "Details of my product", 5, 3);
+
+        doReturn(mockProduct).when(productService).findById(1);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/{id}", 1)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"2\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(jsonPath("$.version", is(3)));
+    }
+
+    @Test
+    @DisplayName("Page not modified - GET /products with If-None-Match")
+    public void testGetProductsPageNotModified() throws Exception {
+        doReturn(new ProductPage(Arrays.asList(new Product(1, "1st product", "Description", 5, 1)), null))
+                .when(productService).findPage(null, 100);
+
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/products"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        doReturn(new ProductPage(Arrays.asList(new Product(1, "1st product", "Changed", 5, 2)), null))
+                .when(productService).findPage(null, 100);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("Get a page of products - GET /products?after=1&limit=2")
+    public void testGetProductsPage() throws Exception {
+        Product secondProduct = new Product(2, "2nd product", "Description", 5, 1);
+        Product thirdProduct = new Product(3, "3rd product", "Description", 5, 1);
+
+        doReturn(new ProductPage(Arrays.asList(secondProduct, thirdProduct), 3))
+                .when(productService).findPage(1, 2);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products")
+                .param("after", "1")
+                .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.items[0].id", is(2)))
+                .andExpect(jsonPath("$.next", is(3)));
+    }
+
+    @Test
+    @DisplayName("Get products modified since - GET /products?modifiedSince=2026-01-01T00:00:00Z&limit=1")
+    public void testGetProductsModifiedSince() throws Exception {
+        Product product = new Product(4, "Changed product", "Description", 5, 2);
+        product.setUpdatedAt(Instant.parse("2026-01-02T10:00:00Z"));
+        doReturn(new ProductPage(Arrays.asList(product), 4, product.getUpdatedAt()))
+                .when(productService).findModifiedSince(Instant.parse("2026-01-01T00:00:00Z"), null, 1);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products")
+                .param("modifiedSince", "2026-01-01T00:00:00Z")
+                .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].id", is(4)))
+                .andExpect(jsonPath("$.items[0].updatedAt", is("2026-01-02T10:00:00Z")))
+                .andExpect(jsonPath("$.next", is(4)))
+                .andExpect(jsonPath("$.nextModifiedSince", is("2026-01-02T10:00:00Z")));
+    }
+
+    @Test
+    @DisplayName("Get a page as CBOR - GET /products Accept: application/cbor")
+    public void testGetProductsPageAsCbor() throws Exception {
+        doReturn(new ProductPage(Arrays.asList(new Product(1, "1st product", "Description", 5, 1)), null))
+                .when(productService).findPage(null, 100);
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/products")
+                .accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+
+        JsonNode page = new CBORMapper().readTree(result.getResponse().getContentAsByteArray());
+        assertEquals("1st product", page.at("/items/0/name").asText());
+    }
+
+    @Test
+    @DisplayName("Get a page with some fields only - GET /products?fields=id,name")
+    public void testGetProductsPageWithFields() throws Exception {
+        doReturn(new ProductPage(Arrays.asList(new Product(1, "1st product", null, null, 1)), null))
+                .when(productService).findPage(null, 100, EnumSet.of(ProductField.ID, ProductField.NAME));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products").param("fields", "id,name"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"items\":[{\"id\":1,\"name\":\"1st product\"}]}"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products").param("fields", "id,price"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Get a product with some fields only - GET /products/1?fields=quantity")
+    public void testGetProductWithFields() throws Exception {
+        doReturn(new Product(1, "My product", "Details of my product", 5, 1)).when(productService).findById(1);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/{id}", 1).param("fields", "quantity"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-f" + ProductField.QUANTITY.ordinal() + "\""))
+                .andExpect(content().string("{\"quantity\":5}"));
+    }
+
+    @Test
+    @DisplayName("Each format of a product has its own ETag - GET /products/1 Accept: application/cbor")
+    public void testGetProductETagPerFormat() throws Exception {
+        doReturn(new Product(1, "My product", "Details of my product", 5, 1)).when(productService).findById(1);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/{id}", 1).accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-cbor\""));
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/{id}", 1)
+                .accept(MediaType.APPLICATION_CBOR)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"1\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("Get many products by id - GET /products?ids=2,9,1")
+    public void testGetProductsById() throws Exception {
+        doReturn(Arrays.asList(
+                ProductLookupResult.found(new Product(2, "2nd product", "Description", 5, 1)),
+                ProductLookupResult.missing(9),
+                ProductLookupResult.found(new Product(1, "1st product", "Description", 5, 1))))
+                .when(productService).findAllById(Arrays.asList(2, 9, 1));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products").param("ids", "2,9,1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].found", is(true)))
+                .andExpect(jsonPath("$[0].product.name", is("2nd product")))
+                .andExpect(jsonPath("$[1].id", is(9)))
+                .andExpect(jsonPath("$[1].found", is(false)))
+                .andExpect(jsonPath("$[1].product").doesNotExist())
+                .andExpect(jsonPath("$[2].id", is(1)));
+    }
+
+    @Test
+    @DisplayName("Look up products by id in the body - POST /products:lookup")
+    public void testLookupProducts() throws Exception {
+        doReturn(Arrays.asList(ProductLookupResult.missing(4)))
+                .when(productService).findAllById(Arrays.asList(4));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/products:lookup")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content("[4]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].found", is(false)));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/products:lookup")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content("[4,null]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Stream all products as NDJSON - GET /products")
+    public void testStreamAllProducts() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Product> action = invocation.getArgument(0);
+            action.accept(new Product(1, "1st product", "Description", 5, 1));
+            action.accept(new Product(2, "2nd product", "Description", 5, 1));
+            return null;
+        }).when(productService).streamAll(any());
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/products")
+                .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(
+                        "{\"id\":1,\"name\":\"1st product\",\"description\":\"Description\",\"quantity\":5,\"version\":1}\n"
+                                + "{\"id\":2,\"name\":\"2nd product\",\"description\":\"Description\",\"quantity\":5,\"version\":1}\n"));
+    }
+
     @Test
     @DisplayName("Add a new product - POST /products")
     public void testAddNewProduct() throws Exception {
@@ -96,26 +339,42 @@ public class ProductsControllerTest {
     }
 
     @Test
-    @Disabled
+    @DisplayName("Apply a batch of changes - POST /products:batch")
+    public void testBatchProducts() throws Exception {
+        doReturn(Arrays.asList(
+                new ProductBatchResult(Operation.CREATE, 0, 1, 1, Status.CREATED),
+                new ProductBatchResult(Operation.DELETE, 0, 7, null, Status.NOT_FOUND)))
+                .when(productService).applyBatch(any());
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/products:batch")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content("{\"create\":[{\"name\":\"New\",\"quantity\":1}],\"delete\":[7]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].status", is("CREATED")))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[1].operation", is("DELETE")))
+                .andExpect(jsonPath("$[1].status", is("NOT_FOUND")));
+    }
+
+    @Test
     @DisplayName("Update an existing product with success - PUT /products/1")
     public void testUpdatingProduct() throws Exception {
         // Prepare mock product
         Product productToUpdate = new Product("New name", "New description", 20);
-        Product mockProduct = new Product(1, "Mock product", "Mock product desc", 10, 1);
+        Product mockProduct = new Product(1, "New name", "New description", 20, 2);
 
         // Prepare mock service methods
-        doReturn(mockProduct).when(productService).findById(1);
         doReturn(mockProduct).when(productService).update(ArgumentMatchers.any());
 
         // Perform PUT request
         mockMvc.perform(put("/products/{id}", 1)
                 .contentType(MediaType.APPLICATION_JSON_VALUE)
-                .header(HttpHeaders.IF_MATCH, 1)
+                .header(HttpHeaders.IF_MATCH, "\"1\"")
                 .content(new ObjectMapper().writeValueAsString(productToUpdate)))
 
                 // Validate 200 OK and JSON response type received
-//                .andExpect(status().isOk())
-                .andExpect(status().is4xxClientError())
+                .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
 
                 // Validate response headers
@@ -126,27 +385,95 @@ public class ProductsControllerTest {
                 .andExpect(jsonPath("$.id", is(1)))
                 .andExpect(jsonPath("$.name", is("New name")))
                 .andExpect(jsonPath("$.quantity", is(20)));
+
+        verify(productService).update(argThat(product -> product.getId() == 1 && product.getVersion() == 1));
     }
 
-    @Disabled
+    @Test
     @DisplayName("Version mismatch while updating existing product - PUT /product/1")
     public void testVersionMismatchWhileUpdating() throws Exception {
         //prepare mock product
         Product productToUpdate = new Product("New name", "New decription", 20);
-        Product mockProduct = new Product(1, "Mock product", "Mock product desc", 10, 2);
 
         //Prepare mock service method
-        doReturn(mockProduct).when(productService).findById(1);
+        doThrow(new ObjectOptimisticLockingFailureException(Product.class, 1))
+                .when(productService).update(ArgumentMatchers.any());
 
         mockMvc.perform(put("/products/{id}", 1)
                 .contentType(MediaType.APPLICATION_JSON_VALUE)
                 .header(HttpHeaders.IF_MATCH, 1)
                 .content(new ObjectMapper().writeValueAsString(productToUpdate)))
 
-                //Validate 409 CONFLICT received
+                //Validate 412 PRECONDITION FAILED received
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    @DisplayName("Update with the ETag of another format - PUT /products/1 If-Match: \"1-cbor\"")
+    public void testUpdateWithETagOfAnotherFormat() throws Exception {
+        doReturn(new Product(1, "New name", "New description", 20, 2)).when(productService).update(ArgumentMatchers.any());
+
+        mockMvc.perform(put("/products/{id}", 1)
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.IF_MATCH, "\"1-cbor\"")
+                .content(new ObjectMapper().writeValueAsString(new Product("New name", "New description", 20))))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2\""));
+
+        verify(productService).update(argThat(product -> product.getVersion() == 1));
+    }
+
+    @Test
+    @DisplayName("Weak ETags do not satisfy If-Match - PUT /products/1 If-Match: W/\"1\"")
+    public void testUpdateWithWeakETag() throws Exception {
+        mockMvc.perform(put("/products/{id}", 1)
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.IF_MATCH, "W/\"1\"")
+                .content(new ObjectMapper().writeValueAsString(new Product("New name", "New description", 20))))
+                .andExpect(status().isPreconditionFailed());
+
+        verify(productService, never()).update(ArgumentMatchers.any());
+    }
+
+    @Test
+    @DisplayName("Update whatever the version - PUT /products/1 If-Match: *")
+    public void testUpdateAnyVersion() throws Exception {
+        doReturn(new Product(1, "New name", "New description", 20, 5))
+                .when(productService).updateAnyVersion(ArgumentMatchers.any());
+
+        mockMvc.perform(put("/products/{id}", 1)
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.IF_MATCH, "*")
+                .content(new ObjectMapper().writeValueAsString(new Product(1, "New name", "New description", 20, 3))))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5\""));
+
+        verify(productService).updateAnyVersion(argThat(product -> product.getId() == 1));
+    }
+
+    @Test
+    @DisplayName("Body version contradicting If-Match - PUT /product/1")
+    public void testBodyVersionConflictsWithIfMatch() throws Exception {
+        Product productToUpdate = new Product(1, "New name", "New decription", 20, 3);
+
+        mockMvc.perform(put("/products/{id}", 1)
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.IF_MATCH, 1)
+                .content(new ObjectMapper().writeValueAsString(productToUpdate)))
                 .andExpect(status().isConflict());
     }
 
+    @Test
+    @DisplayName("Update without If-Match - PUT /product/1")
+    public void testUpdateWithoutIfMatch() throws Exception {
+        Product productToUpdate = new Product("New name", "New decription", 20);
+
+        mockMvc.perform(put("/products/{id}", 1)
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(new ObjectMapper().writeValueAsString(productToUpdate)))
+                .andExpect(status().is(428));
+    }
+
     @Test
     @DisplayName("Product not found while updating - PUT /product/1")
     public void testProductNotFoundWhileUpdating() throws Exception {
@@ -166,6 +493,55 @@ public class ProductsControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("Stock of a product - GET /products/1/quantity")
+    public void testGetQuantity() throws Exception {
+        doReturn(new StockLevel(1, 7)).when(productService).findStock(1);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/{id}/quantity", 1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is(1)))
+                .andExpect(jsonPath("$.quantity", is(7)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/{id}/quantity", 2))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("Take stock of a product - POST /products/1/quantity:adjust")
+    public void testAdjustQuantity() throws Exception {
+        doReturn(new Product(1, "My product", "Details", 3, 4)).when(productService).adjustQuantity(1, -2, true);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/products/{id}/quantity:adjust", 1)
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content("{\"delta\":-2}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(jsonPath("$.quantity", is(3)));
+    }
+
+    @Test
+    @DisplayName("Not enough stock - POST /products/1/quantity:adjust")
+    public void testAdjustQuantityInsufficientStock() throws Exception {
+        doThrow(new InsufficientStockException(1)).when(productService).adjustQuantity(1, -20, true);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/products/{id}/quantity:adjust", 1)
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content("{\"delta\":-20}"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    @DisplayName("Reserve stock of many products - POST /products/quantity:reserve")
+    public void testReserveQuantities() throws Exception {
+        doThrow(new InsufficientStockException(2)).when(productService).reserve(any());
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/products/quantity:reserve")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content("[{\"id\":1,\"quantity\":1},{\"id\":2,\"quantity\":5}]"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.id", is(2)));
+    }
+
     @Test
     @DisplayName("Delete a product successfull - DELETE /products/1")
     public void testProductDeleteSuccessfully() throws Exception {
@@ -191,4 +567,17 @@ public class ProductsControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("Metrics in Prometheus format - GET /actuator/prometheus")
+    public void testPrometheusScrape() throws Exception {
+        doReturn(null).when(productService).findById(1);
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/{id}", 1));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("products_cache_requests_total{result=\"hit\",}")))
+                .andExpect(content().string(containsString("http_server_requests_seconds_bucket{")))
+                .andExpect(content().string(containsString("uri=\"/products/{id}\"")));
+    }
+
 }
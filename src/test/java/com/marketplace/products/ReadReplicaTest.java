@@ -0,0 +1,113 @@
+package com.marketplace.products;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.repository.ProductRepository;
+import com.marketplace.products.replication.ReplicaRouter;
+import com.marketplace.products.service.ProductService;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// replicas do not replicate here, the tests copy rows to them; the cache would hide where reads go
+@SpringBootTest(properties = {"products.replicas.enabled=true",
+        "products.replicas.urls=jdbc:h2:mem:products-replica-0;DB_CLOSE_DELAY=-1,"
+                + "jdbc:h2:mem:products-replica-1;DB_CLOSE_DELAY=-1",
+        "products.replicas.lag-query=select lag from replica_lag", "products.replicas.check-interval=3600000",
+        "products.cache.max-size=0"})
+public class ReadReplicaTest {
+
+    private static final long LAG = 200;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    @BeforeEach
+    public void setUp() {
+        for (DataSource replica : replicaRouter.getDataSources()) {
+            Flyway.configure().dataSource(replica).load().migrate();
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(replica);
+            jdbcTemplate.execute("create table if not exists replica_lag (lag bigint)");
+            jdbcTemplate.update("delete from replica_lag");
+            jdbcTemplate.update("insert into replica_lag values (?)", LAG);
+        }
+        replicaRouter.checkReplicas();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        productRepository.deleteAll();
+        for (DataSource replica : replicaRouter.getDataSources()) {
+            new JdbcTemplate(replica).update("delete from product");
+        }
+    }
+
+    @Test
+    @DisplayName("Reads stay on the primary until the replicas caught up, then take turns on them")
+    public void testReadsGoToReplicasOnceCaughtUp() throws InterruptedException {
+        Product product = productService.save(new Product("Primary", "Description", 1));
+        copyToReplicas(product);
+
+        Assertions.assertEquals("Primary", productService.findById(product.getId()).getName());
+        Assertions.assertEquals("Primary", productService.findPage(null, 10).getItems().get(0).getName());
+
+        Thread.sleep(LAG + 50);
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            names.add(productService.findById(product.getId()).getName());
+        }
+        Assertions.assertEquals(Set.of("Replica 0", "Replica 1"), names);
+        Assertions.assertTrue(productService.findPage(null, 10).getItems().get(0).getName().startsWith("Replica"));
+
+        product.setName("Updated");
+        Assertions.assertEquals("Updated", productService.update(product).getName());
+        Assertions.assertEquals("Updated", productService.findById(product.getId()).getName());
+    }
+
+    @Test
+    @DisplayName("Replicas lagging too far behind serve no reads")
+    public void testLaggingReplicasAreSkipped() throws InterruptedException {
+        Product product = productService.save(new Product("Primary", "Description", 1));
+        copyToReplicas(product);
+        Thread.sleep(LAG + 50);
+
+        setLag(1, 60000);
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals("Replica 0", productService.findById(product.getId()).getName());
+        }
+        setLag(0, 60000);
+        Assertions.assertEquals("Primary", productService.findById(product.getId()).getName());
+    }
+
+    private void copyToReplicas(Product product) {
+        List<DataSource> replicas = replicaRouter.getDataSources();
+        for (int replica = 0; replica < replicas.size(); replica++) {
+            new JdbcTemplate(replicas.get(replica)).update("insert into product (id, name, description, quantity, "
+                            + "version, created_at, updated_at) values (?, ?, ?, ?, ?, ?, ?)", product.getId(),
+                    "Replica " + replica, product.getDescription(), product.getQuantity(), product.getVersion(),
+                    Timestamp.from(product.getCreatedAt()), Timestamp.from(product.getUpdatedAt()));
+        }
+    }
+
+    private void setLag(int replica, long lag) {
+        new JdbcTemplate(replicaRouter.getDataSources().get(replica)).update("update replica_lag set lag = ?", lag);
+        replicaRouter.checkReplicas();
+    }
+}
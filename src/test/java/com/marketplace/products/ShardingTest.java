@@ -0,0 +1,191 @@
+package com.marketplace.products;
+
+import com.marketplace.products.model.Product;
+import com.marketplace.products.model.ProductBatchResult;
+import com.marketplace.products.model.ProductBatchResult.Status;
+import com.marketplace.products.model.ProductChange;
+import com.marketplace.products.model.ProductPage;
+import com.marketplace.products.model.StockReservation;
+import com.marketplace.products.service.InsufficientStockException;
+import com.marketplace.products.service.ProductChangeFeed;
+import com.marketplace.products.service.ProductService;
+import com.marketplace.products.sharding.ShardRouter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@SpringBootTest(properties = "products.modified-since.commit-lag=0")
+@ActiveProfiles("sharded")
+public class ShardingTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductChangeFeed productChangeFeed;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @AfterEach
+    public void cleanUp() {
+        for (DataSource shard : shardRouter.getDataSources()) {
+            new JdbcTemplate(shard).update("delete from product");
+        }
+    }
+
+    @Test
+    @DisplayName("Hash ids name their shard and range ids fall in the range of theirs")
+    public void testIdsOfShards() {
+        ShardRouter hash = new ShardRouter(true, "hash", 100, Arrays.asList("jdbc:h2:mem:a", "jdbc:h2:mem:b",
+                "jdbc:h2:mem:c"), 1, "sa", "");
+        ShardRouter range = new ShardRouter(true, "range", 100, Arrays.asList("jdbc:h2:mem:a", "jdbc:h2:mem:b",
+                "jdbc:h2:mem:c"), 1, "sa", "");
+        try {
+            for (int shard = 0; shard < 3; shard++) {
+                for (long value = 1; value <= 100; value++) {
+                    Assertions.assertEquals(shard, hash.shardOf(hash.toId(shard, value)));
+                    Assertions.assertEquals(shard, range.shardOf(range.toId(shard, value)));
+                }
+            }
+            Assertions.assertEquals(101, range.toId(1, 1));
+            Assertions.assertThrows(IllegalStateException.class, () -> range.toId(1, 101));
+        } finally {
+            hash.close();
+            range.close();
+        }
+    }
+
+    @Test
+    @DisplayName("New products are spread over the shards and found on theirs")
+    public void testProductsAreSpreadOverShards() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            ids.add(productService.save(new Product("Product " + i, "Description", i)).getId());
+        }
+
+        List<DataSource> shards = shardRouter.getDataSources();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            List<Integer> stored = new JdbcTemplate(shards.get(shard)).queryForList("select id from product",
+                    Integer.class);
+            Assertions.assertEquals(10, stored.size());
+            int expectedShard = shard;
+            Assertions.assertTrue(stored.stream().allMatch(id -> id % shards.size() == expectedShard), stored::toString);
+        }
+        for (int id : ids) {
+            Assertions.assertEquals(id, productService.findById(id).getId());
+        }
+        Product updated = productService.findById(ids.get(4));
+        updated.setName("Updated");
+        Assertions.assertEquals(2, productService.update(updated).getVersion());
+        productService.delete(ids.get(5));
+        Assertions.assertNull(productService.findById(ids.get(5)));
+        Assertions.assertEquals(29, productService.findAllById(ids).stream()
+                .filter(result -> result.getProduct() != null).count());
+    }
+
+    @Test
+    @DisplayName("Pages, delta pages and streams merge the shards in order")
+    public void testListingsMergeShards() {
+        Instant start = Product.timestamp();
+        List<ProductBatchResult> created = productService.saveAll(IntStream.range(0, 25)
+                .mapToObj(i -> new Product("Product " + i, "Description", i))
+                .collect(Collectors.toList()));
+        List<Integer> ids = created.stream().map(ProductBatchResult::getId).sorted().collect(Collectors.toList());
+
+        List<Integer> paged = new ArrayList<>();
+        Integer after = null;
+        do {
+            ProductPage page = productService.findPage(after, 7);
+            page.getItems().forEach(product -> paged.add(product.getId()));
+            after = page.getNext();
+        } while (after != null);
+        Assertions.assertEquals(ids, paged);
+
+        List<Integer> modified = new ArrayList<>();
+        Instant since = start;
+        after = null;
+        do {
+            ProductPage page = productService.findModifiedSince(since, after, 6);
+            page.getItems().forEach(product -> modified.add(product.getId()));
+            since = page.getNextModifiedSince();
+            after = page.getNext();
+        } while (after != null);
+        Assertions.assertEquals(25, modified.size());
+        Assertions.assertEquals(ids, modified.stream().sorted().collect(Collectors.toList()));
+
+        List<Integer> streamed = new ArrayList<>();
+        productService.streamAll(product -> streamed.add(product.getId()));
+        Assertions.assertEquals(ids, streamed);
+    }
+
+    @Test
+    @DisplayName("Batch results keep the order of the request across shards")
+    public void testBatchesSpanShards() {
+        List<ProductBatchResult> created = productService.saveAll(Arrays.asList(
+                new Product("First", "Description", 1), null, new Product("Third", "Description", 3),
+                new Product("Fourth", "Description", 4)));
+        Assertions.assertEquals(Arrays.asList(Status.CREATED, Status.INVALID, Status.CREATED, Status.CREATED),
+                created.stream().map(ProductBatchResult::getStatus).collect(Collectors.toList()));
+        Assertions.assertEquals(Arrays.asList(0, 1, 2, 3),
+                created.stream().map(ProductBatchResult::getIndex).collect(Collectors.toList()));
+
+        List<ProductBatchResult> deleted = productService.deleteAll(Arrays.asList(created.get(3).getId(), -3,
+                created.get(0).getId()));
+        Assertions.assertEquals(Arrays.asList(Status.DELETED, Status.NOT_FOUND, Status.DELETED),
+                deleted.stream().map(ProductBatchResult::getStatus).collect(Collectors.toList()));
+        Assertions.assertNotNull(productService.findById(created.get(2).getId()));
+    }
+
+    @Test
+    @DisplayName("A reservation refused on one shard gives back what the others took")
+    public void testReservationSpanningShards() {
+        int first = productService.save(new Product("First", "Description", 5)).getId();
+        int second = productService.save(new Product("Second", "Description", 5)).getId();
+        int third = productService.save(new Product("Third", "Description", 1)).getId();
+
+        Assertions.assertThrows(InsufficientStockException.class, () -> productService.reserve(Arrays.asList(
+                new StockReservation(first, 2), new StockReservation(second, 3), new StockReservation(third, 2))));
+        Assertions.assertEquals(5, productService.findById(first).getQuantity());
+        Assertions.assertEquals(5, productService.findById(second).getQuantity());
+
+        productService.reserve(Arrays.asList(new StockReservation(first, 2), new StockReservation(third, 1)));
+        Assertions.assertEquals(3, productService.findById(first).getQuantity());
+        Assertions.assertEquals(0, productService.findById(third).getQuantity());
+    }
+
+    @Test
+    @DisplayName("The change feed merges the logs of the shards in the order of the changes")
+    public void testChangeFeedMergesShards() {
+        long head = productChangeFeed.head();
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            ids.add(productService.save(new Product("Product " + i, "Description", i)).getId());
+        }
+
+        List<ProductChange> changes = productChangeFeed.changesAfter(head, 100).getChanges();
+        Assertions.assertEquals(ids, changes.stream().map(ProductChange::getProductId).collect(Collectors.toList()));
+        List<Long> changeIds = changes.stream().map(ProductChange::getId).collect(Collectors.toList());
+        List<Long> sorted = new ArrayList<>(changeIds);
+        Collections.sort(sorted);
+        Assertions.assertEquals(sorted, changeIds);
+        Assertions.assertEquals(changeIds.get(changeIds.size() - 1), productChangeFeed.head());
+        Assertions.assertEquals(changeIds.subList(0, 4),
+                productChangeFeed.changesAfter(head, 4).getChanges().stream().map(ProductChange::getId)
+                        .collect(Collectors.toList()));
+    }
+}